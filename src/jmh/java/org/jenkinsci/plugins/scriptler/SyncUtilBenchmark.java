@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.scriptler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synchronizing the configuration with a generated script directory, done on startup and after every push to the git
+ * repository. Every invocation starts with an empty configuration, so all scripts have to be parsed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class SyncUtilBenchmark {
+
+    @Param({ "100", "1000" })
+    public int size;
+
+    private File directory;
+    private ScriptlerConfiguration cfg;
+
+    @Setup(Level.Trial)
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("scripts", "");
+        directory.delete();
+        directory.mkdirs();
+        for (int i = 0; i < size; i++) {
+            final String meta = i % 2 == 0 ? "/*** BEGIN META {\n  \"name\" : \"Script " + i + "\",\n  \"comment\" : \"generated\",\n"
+                    + "  \"parameters\" : [ \"a\", \"b\" ],\n  \"core\": \"1.300\",\n  \"authors\" : [ { \"name\" : \"Jenkins\" } ]\n} END META**/\n" : "";
+            FileUtils.writeStringToFile(new File(directory, String.format("script-%06d.groovy", i)), meta + "println 'script " + i + "'\n", "UTF-8");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Setup(Level.Invocation)
+    public void createConfiguration() {
+        cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+    }
+
+    @Benchmark
+    public ScriptlerConfiguration syncDirWithCfg() throws IOException {
+        SyncUtil.syncDirWithCfg(directory, cfg);
+        return cfg;
+    }
+}
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up and replacing scripts, done on every request and execution referencing a script.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ScriptSetBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    public int size;
+
+    private ScriptSet scripts;
+    private String lastId;
+    private Script replacement;
+
+    @Setup
+    public void setUp() {
+        scripts = createScriptSet(size);
+        lastId = scriptId(size - 1);
+        replacement = createScript(size / 2);
+    }
+
+    static ScriptSet createScriptSet(int size) {
+        ScriptSet scripts = new ScriptSet();
+        scripts.setScripts(createScripts(size));
+        return scripts;
+    }
+
+    static SortedSet<Script> createScripts(int size) {
+        SortedSet<Script> scripts = new TreeSet<Script>(new ByIdSorter());
+        for (int i = 0; i < size; i++) {
+            scripts.add(createScript(i));
+        }
+        return scripts;
+    }
+
+    static Script createScript(int i) {
+        return new Script(scriptId(i), "Script " + i, "benchmark script " + i, "groovy", i % 2 == 0,
+                new Parameter[] { new Parameter("param", "value") }, false);
+    }
+
+    static String scriptId(int i) {
+        return String.format("script-%06d.groovy", i);
+    }
+
+    @Benchmark
+    public Script getScriptById() {
+        return scripts.getScriptById(lastId);
+    }
+
+    @Benchmark
+    public Script getMissingScriptById() {
+        return scripts.getScriptById("missing.groovy");
+    }
+
+    @Benchmark
+    public ScriptSet addOrReplace() {
+        scripts.addOrReplace(replacement);
+        return scripts;
+    }
+}
@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import hudson.XmlFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing and reading the configuration (<code>scriptler.xml</code> and the {@link ScriptStore}), done on every change
+ * of a script and on startup. Loading all scripts is measured with and without the binary snapshot of the store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ScriptlerConfigurationBenchmark {
+
+    @Param({ "100", "10000", "50000" })
+    public int size;
+
+    private File directory;
+    private XmlFile xmlFile;
+    private File snapshotDirectory;
+    private XmlFile snapshotXmlFile;
+    private ScriptlerConfiguration cfg;
+    private Script replacement;
+    private String lastId;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("scriptler", "");
+        directory.delete();
+        directory.mkdirs();
+        xmlFile = ScriptlerConfiguration.getXmlFile(new File(directory, "scriptler.xml"));
+        cfg = new ScriptlerConfiguration(ScriptSetBenchmark.createScripts(size));
+        cfg.writeScripts(xmlFile);
+        xmlFile.write(cfg);
+
+        snapshotDirectory = File.createTempFile("scriptler", "");
+        snapshotDirectory.delete();
+        FileUtils.copyDirectory(directory, snapshotDirectory);
+        snapshotXmlFile = ScriptlerConfiguration.getXmlFile(new File(snapshotDirectory, "scriptler.xml"));
+        ScriptlerConfiguration.load(snapshotXmlFile).writeSnapshot(snapshotXmlFile);
+        replacement = ScriptSetBenchmark.createScript(size / 2);
+        lastId = ScriptSetBenchmark.scriptId(size - 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+        FileUtils.deleteDirectory(snapshotDirectory);
+    }
+
+    /** changing a single script */
+    @Benchmark
+    public boolean saveOneScript() throws IOException {
+        cfg.addOrReplace(replacement);
+        return cfg.writeScripts(xmlFile);
+    }
+
+    /** a build looking up its script right after startup */
+    @Benchmark
+    public Script loadOneScript() throws IOException {
+        return ScriptlerConfiguration.load(xmlFile).getScriptById(lastId);
+    }
+
+    /** a cold start without the snapshot, each script is read from its XML file */
+    @Benchmark
+    public int loadAllScripts() throws IOException {
+        return ScriptlerConfiguration.load(xmlFile).getScripts().size();
+    }
+
+    /** a cold start with an up to date snapshot */
+    @Benchmark
+    public int loadAllScriptsFromSnapshot() throws IOException {
+        return ScriptlerConfiguration.load(snapshotXmlFile).getScripts().size();
+    }
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jenkinsci.plugins.scriptler.share.ScriptInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the meta info of a script, done for each script found in the script directory and each catalog entry. The
+ * pattern used before {@link ScriptMetaScanner} is measured as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ExtractScriptInfoBenchmark {
+
+    static final String META = "/*** BEGIN META {\n"
+            + "  \"name\" : \"Benchmark script\",\n"
+            + "  \"comment\" : \"measures the meta info parsing\",\n"
+            + "  \"parameters\" : [ \"first\", \"second\" ],\n"
+            + "  \"core\": \"1.300\",\n"
+            + "  \"authors\" : [ { \"name\" : \"Jenkins\" } ]\n"
+            + "} END META**/\n";
+
+    /** small: just the meta info, large: meta info followed by 20k lines, pathological: many unterminated meta markers */
+    @Param({ "small", "large", "pathological" })
+    public String body;
+
+    private String script;
+
+    @Setup
+    public void setUp() {
+        script = createBody(body);
+    }
+
+    static String createBody(String kind) {
+        StringBuilder sb = new StringBuilder();
+        if ("small".equals(kind)) {
+            sb.append(META).append("println 'hello'\n");
+        } else if ("large".equals(kind)) {
+            sb.append(META);
+            for (int i = 0; i < 20000; i++) {
+                sb.append("println \"line ").append(i).append(" of a large script\"\n");
+            }
+        } else if ("pathological".equals(kind)) {
+            for (int i = 0; i < 1000; i++) {
+                sb.append("// BEGIN META without an end, line ").append(i).append('\n');
+            }
+        } else {
+            throw new IllegalArgumentException(kind);
+        }
+        return sb.toString();
+    }
+
+    private static final Pattern SCRIPT_META_PATTERN = Pattern.compile(".*BEGIN META(.+?)END META.*", Pattern.DOTALL);
+
+    @Benchmark
+    public ScriptInfo extractScriptInfo() {
+        return ScriptHelper.extractScriptInfo(script);
+    }
+
+    @Benchmark
+    public String findMeta() {
+        return ScriptMetaScanner.findMeta(script, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public String findMetaWithPattern() {
+        final Matcher matcher = SCRIPT_META_PATTERN.matcher(script);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import hudson.util.StreamTaskListener;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.jenkinsci.plugins.scriptler.config.Parameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executing a groovy script: cold (the script has to be compiled) versus warm (the compiled class is reused).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class GroovyScriptBenchmark {
+
+    private static final String SCRIPT = "def sum = 0\nfor (i in 1..100) { sum += i }\nreturn sum";
+
+    private final StreamTaskListener listener = new StreamTaskListener(new NullOutputStream());
+    private long counter;
+
+    @Benchmark
+    public Object cold() {
+        // a source never seen before can not be served from the compiled script cache
+        return execute(SCRIPT + "\n// " + counter++);
+    }
+
+    @Benchmark
+    public Object warm() {
+        return execute(SCRIPT);
+    }
+
+    private Object execute(String source) {
+        return new GroovyScript(source, new Parameter[0], true, listener) {
+            @Override
+            public ClassLoader getClassLoader() {
+                return GroovyScriptBenchmark.class.getClassLoader();
+            }
+        }.call();
+    }
+}
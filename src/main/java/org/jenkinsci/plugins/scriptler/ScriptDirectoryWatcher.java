@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.scriptler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
+
+/**
+ * Picks up scripts created, changed or deleted in the scripts directory by someone else than scriptler (e.g. config
+ * management or rsync). The directory is polled (a listing and a stat per file, no file gets read) and only the entries
+ * which changed are applied to the configuration - once they stayed the same for one poll, so that files still being
+ * written are not picked up half way. If too many entries changed at once, a full {@link SyncUtil#syncDirWithCfg} is
+ * done instead.
+ */
+public class ScriptDirectoryWatcher {
+
+    private final static Logger LOGGER = Logger.getLogger(ScriptDirectoryWatcher.class.getName());
+
+    /** ms between two polls of the directory, <code>0</code> disables the watcher */
+    public static final long POLL_INTERVAL = Long.getLong(ScriptDirectoryWatcher.class.getName() + ".pollInterval", 5000);
+
+    /** if more entries changed at once, the whole directory gets synchronized */
+    public static final int MAX_CHANGES = Integer.getInteger(ScriptDirectoryWatcher.class.getName() + ".maxChanges", 1000);
+
+    private final File directory;
+    private final int maxChanges;
+    private ScheduledExecutorService executor;
+
+    // only accessed by the polling thread
+    /** the state of the entries applied to the configuration */
+    private Map<String, FileState> applied;
+    /** the entries which differed from the applied state at the last poll - the state is null for deleted files */
+    private Map<String, FileState> pending = new HashMap<String, FileState>();
+
+    public ScriptDirectoryWatcher(File directory) {
+        this(directory, MAX_CHANGES);
+    }
+
+    ScriptDirectoryWatcher(File directory, int maxChanges) {
+        this.directory = directory;
+        this.maxChanges = maxChanges;
+        this.applied = scan();
+    }
+
+    /**
+     * Starts polling, the current content of the directory is expected to be synchronized already.
+     */
+    public synchronized void start(long pollInterval) {
+        if (executor != null || pollInterval <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Scriptler script directory watcher"));
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                final ScriptlerConfiguration cfg = ScriptlerConfiguration.getConfiguration();
+                if (cfg == null) {
+                    return;
+                }
+                try {
+                    if (poll(cfg)) {
+                        cfg.save();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to synchronize " + directory, e);
+                } catch (RuntimeException e) {
+                    // must not stop the scheduling
+                    LOGGER.log(Level.WARNING, "Failed to synchronize " + directory, e);
+                }
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Applies the entries which changed and settled since the last poll.
+     *
+     * @return has the configuration been changed?
+     */
+    boolean poll(ScriptlerConfiguration cfg) throws IOException {
+        final Map<String, FileState> current = scan();
+        final Map<String, FileState> changed = new HashMap<String, FileState>();
+        for (Map.Entry<String, FileState> entry : current.entrySet()) {
+            if (!entry.getValue().equals(applied.get(entry.getKey()))) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String name : applied.keySet()) {
+            if (!current.containsKey(name)) {
+                changed.put(name, null);
+            }
+        }
+
+        // debounce: only entries which look the same as at the last poll are applied
+        final List<String> settled = new ArrayList<String>();
+        for (Map.Entry<String, FileState> entry : changed.entrySet()) {
+            final String name = entry.getKey();
+            if (pending.containsKey(name) && FileState.equals(pending.get(name), entry.getValue())) {
+                settled.add(name);
+            }
+        }
+        pending = changed;
+        if (settled.isEmpty()) {
+            return false;
+        }
+
+        if (settled.size() > maxChanges) {
+            LOGGER.log(Level.INFO, "{0} scripts changed in {1}, synchronizing the whole directory", new Object[] { settled.size(), directory });
+            SyncUtil.syncDirWithCfg(directory, cfg);
+        } else {
+            LOGGER.log(Level.FINE, "scripts changed in {0}: {1}", new Object[] { directory, settled });
+            SyncUtil.syncFilesWithCfg(directory, cfg, settled);
+        }
+        for (String name : settled) {
+            final FileState state = pending.remove(name);
+            if (state == null) {
+                applied.remove(name);
+            } else {
+                applied.put(name, state);
+            }
+        }
+        return true;
+    }
+
+    private Map<String, FileState> scan() {
+        final Map<String, FileState> states = new HashMap<String, FileState>();
+        final File[] files = directory.listFiles(SyncUtil.SCRIPT_FILTER);
+        if (files != null) {
+            for (File file : files) {
+                states.put(file.getName(), new FileState(file.lastModified(), file.length()));
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return the names of the entries which changed but did not settle yet
+     */
+    Set<String> getPending() {
+        return new HashSet<String>(pending.keySet());
+    }
+
+    private static final class FileState {
+        private final long lastModified;
+        private final long length;
+
+        FileState(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        static boolean equals(FileState a, FileState b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lastModified ^ (lastModified >>> 32)) * 31 + (int) (length ^ (length >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return lastModified == other.lastModified && length == other.length;
+        }
+    }
+}
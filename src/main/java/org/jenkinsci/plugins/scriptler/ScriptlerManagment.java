@@ -34,10 +34,16 @@ import hudson.security.Permission;
 import jenkins.model.Jenkins;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.config.Script;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
 import org.jenkinsci.plugins.scriptler.git.GitScriptlerRepository;
+import org.jenkinsci.plugins.scriptler.git.ScriptDiff;
+import org.jenkinsci.plugins.scriptler.history.ExecutionHistory;
+import org.jenkinsci.plugins.scriptler.metrics.ScriptlerMetrics;
+import org.jenkinsci.plugins.scriptler.run.ScriptRun;
+import org.jenkinsci.plugins.scriptler.run.ScriptRunService;
 import org.jenkinsci.plugins.scriptler.share.CatalogInfo;
 import org.jenkinsci.plugins.scriptler.share.ScriptInfo;
 import org.jenkinsci.plugins.scriptler.share.ScriptInfoCatalog;
@@ -55,6 +61,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -128,7 +135,11 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
         return this;
     }
 
+    /**
+     * Waits for the initial synchronization of the scripts directory, see {@link ScritplerPluginImpl#awaitInitialized()}.
+     */
     public ScriptlerConfiguration getConfiguration() {
+        ScritplerPluginImpl.awaitInitialized();
         return ScriptlerConfiguration.getConfiguration();
     }
 
@@ -185,7 +196,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
 
                 Parameter[] parameters = paramList.toArray(new Parameter[paramList.size()]);
 
-                final String finalName = saveScriptAndForward(id, info.getName(), info.getComment(), info.getInterpreter(), source, false, false, catalogName, id, parameters);
+                final String finalName = saveScriptAndForward(id, info.getName(), info.getComment(), info.getInterpreter(), source, false, false, 0, catalogName, id, parameters);
                 return new HttpRedirect("editScript?id=" + finalName);
             }
         }
@@ -204,6 +215,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
      * @param name        the name of the script
      * @param comment     a comment
      * @param script      script code
+     * @param timeout     (optional) default number of seconds an execution of the script may take
      * @param originCatalogName (optional) the name of the catalog the script is loaded/added from
      * @param originId    (optional) the original id the script had at the catalog
      * @throws IOException
@@ -213,13 +225,16 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
                                     @QueryParameter("name") String name, @QueryParameter("comment") String comment,
                                     @QueryParameter("script") String script, @QueryParameter("interpreter") String interpreter,
                                     @QueryParameter("nonAdministerUsing") boolean nonAdministerUsing,
-                                    @QueryParameter("onlyMaster") boolean onlyMaster, String originCatalogName, String originId) throws IOException, ServletException {
+                                    @QueryParameter("onlyMaster") boolean onlyMaster, @QueryParameter("timeout") String timeout,
+                                    String originCatalogName, String originId) throws IOException, ServletException {
 
         checkPermission(Hudson.ADMINISTER);
 
         Parameter[] parameters = UIHelper.extractParameters(req.getSubmittedForm());
 
-        saveScriptAndForward(id, name, comment, interpreter, script, nonAdministerUsing, onlyMaster, originCatalogName, originId, parameters);
+        final long timeoutSeconds = StringUtils.isBlank(timeout) ? 0 : Math.max(0, NumberUtils.toLong(timeout.trim(), 0));
+
+        saveScriptAndForward(id, name, comment, interpreter, script, nonAdministerUsing, onlyMaster, timeoutSeconds, originCatalogName, originId, parameters);
         return new HttpRedirect("index");
     }
 
@@ -230,7 +245,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
      * @throws IOException
      */
     private String saveScriptAndForward(String id, String name, String comment, String interpreter, String script,
-                                        boolean nonAdministerUsing, boolean onlyMaster, String originCatalogName,
+                                        boolean nonAdministerUsing, boolean onlyMaster, long timeout, String originCatalogName,
                                         String originId, Parameter[] parameters) throws IOException {
         script = script == null ? "TODO" : script;
         if (StringUtils.isEmpty(id)) {
@@ -245,6 +260,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
         Writer writer = new FileWriter(newScriptFile);
         writer.write(script);
         writer.close();
+        ScriptHelper.invalidateSource(newScriptFile);
 
         commitFileToGitRepo(finalFileName);
 
@@ -255,6 +271,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
             // save (overwrite) the meta information
             newScript = new Script(finalFileName, displayName, comment, interpreter, nonAdministerUsing, parameters, onlyMaster);
         }
+        newScript.setTimeout(timeout);
         ScriptlerConfiguration cfg = getConfiguration();
         cfg.addOrReplace(newScript);
         cfg.save();
@@ -305,6 +322,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
         // remove the file
         File oldScript = new File(getScriptDirectory(), id);
         oldScript.delete();
+        ScriptHelper.invalidateSource(oldScript);
 
         try {
             final GitScriptlerRepository gitRepo = Jenkins.getInstance().getExtensionList(GitScriptlerRepository.class).get(GitScriptlerRepository.class);
@@ -359,6 +377,7 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
         final File f = new File(rootDir, fileName);
 
         fileItem.write(f);
+        ScriptHelper.invalidateSource(f);
 
         commitFileToGitRepo(fileName);
 
@@ -393,7 +412,8 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
     }
 
     /**
-     * Trigger/run/execute the script on a slave and show the result/output. The request then gets forward to <code>runscript.jelly</code> (This is usually also where the request came from). The
+     * Trigger/run/execute the script on a slave and show the result/output. The script is executed in the background by the {@link ScriptRunService}, the
+     * request then gets forward to <code>runscript.jelly</code> (This is usually also where the request came from) which follows the progress of the run. The
      * script passed to this method gets restored in the request again (and not loaded from the system). This way one is able to modify the script before execution and reuse the modified version for
      * further executions.
      *
@@ -405,7 +425,8 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
      * @throws ServletException
      */
     public void doTriggerScript(StaplerRequest req, StaplerResponse rsp, @QueryParameter("id") String id,
-                                @QueryParameter("script") String scriptSrc, @QueryParameter("node") String node) throws IOException, ServletException {
+                                @QueryParameter("script") String scriptSrc, @QueryParameter("node") String node,
+                                @QueryParameter("timeout") String timeout) throws IOException, ServletException {
         checkPermission(getRequiredPermissionForRunScript());
 
         final Parameter[] parameters = UIHelper.extractParameters(req.getSubmittedForm());
@@ -427,15 +448,50 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
 
         tempScript.setParameters(parameters);
         String[] slaves = resolveSlaveNames(node);
-        String output = ScriptHelper.runScript(slaves, tempScript);
+        try {
+            // the timeout of a single run must not change the default of the script
+            final long runTimeout = StringUtils.isBlank(timeout) ? tempScript.getTimeout() : Math.max(0, NumberUtils.toLong(timeout.trim(), tempScript.getTimeout()));
+            final ScriptRun run = ScriptRunService.get().submit(tempScript, slaves, runTimeout);
+            req.setAttribute("timeout", runTimeout);
+            rsp.setHeader("X-Scriptler-Run", run.getId());
+            req.setAttribute("run", run);
+        } catch (RejectedExecutionException e) {
+            req.setAttribute("output", Messages.too_many_runs());
+        }
 
         req.setAttribute("script", tempScript);
         req.setAttribute("currentNode", node);
-        req.setAttribute("output", output);
         req.setAttribute("readOnly", !isChangeScriptAllowed);
         req.getView(this, "runscript.jelly").forward(req, rsp);
     }
 
+    /**
+     * Gives access to the runs submitted via {@link #doTriggerScript}, e.g. <code>/scriptler/run/&lt;id&gt;/status</code>.
+     *
+     * @param id the id of the run
+     * @return the run - <code>null</code> if there is no such run (anymore) or it was submitted by another user
+     */
+    public ScriptRun getRun(String id) {
+        checkPermission(getRequiredPermissionForRunScript());
+        return ScriptRunService.get().getRun(id);
+    }
+
+    /**
+     * Gives access to the history of the script executions, e.g. <code>/scriptler/history/script?id=&lt;id&gt;</code>.
+     */
+    public ExecutionHistory getHistory() {
+        checkPermission(getRequiredPermissionForRunScript());
+        return ExecutionHistory.get();
+    }
+
+    /**
+     * Gives access to the execution metrics, e.g. <code>/scriptler/metrics</code> or <code>/scriptler/metrics/prometheus</code>.
+     */
+    public ScriptlerMetrics getMetrics() {
+        checkPermission(Hudson.ADMINISTER);
+        return ScriptlerMetrics.get();
+    }
+
     private String[] resolveSlaveNames(String nameAlias) {
         List<String> slaves = null;
         if (nameAlias.equalsIgnoreCase(ALL) || nameAlias.equalsIgnoreCase(ALL_SLAVES)) {
@@ -471,6 +527,82 @@ public class ScriptlerManagment extends ManagementLink implements RootAction {
         req.getView(this, "show.jelly").forward(req, rsp);
     }
 
+    /**
+     * Forwards the request to "githistory.jelly", which loads the git log of the script page by page.
+     *
+     * @param req        request
+     * @param rsp        response
+     * @throws IOException
+     * @throws ServletException
+     */
+    public void doGitHistory(StaplerRequest req, StaplerResponse rsp, @QueryParameter("id") String id) throws IOException, ServletException {
+        checkPermission(Hudson.ADMINISTER);
+
+        req.setAttribute("scriptId", id);
+        req.getView(this, "githistory.jelly").forward(req, rsp);
+    }
+
+    /**
+     * Compares two revisions of a script from the git repo and forwards the request to "scriptdiff.jelly".
+     *
+     * @param req        request
+     * @param rsp        response
+     * @param id         the id of the script
+     * @param from       (optional) the older revision - the parent of <code>to</code> by default
+     * @param to         (optional) the newer revision - <code>HEAD</code> by default
+     * @throws IOException
+     * @throws ServletException
+     */
+    public void doScriptDiff(StaplerRequest req, StaplerResponse rsp, @QueryParameter("id") String id, @QueryParameter("from") String from,
+                             @QueryParameter("to") String to) throws IOException, ServletException {
+        checkPermission(Hudson.ADMINISTER);
+
+        final String toRevision = StringUtils.isBlank(to) ? "HEAD" : to;
+        final String fromRevision = StringUtils.isBlank(from) ? toRevision + "^" : from;
+        final GitScriptlerRepository gitRepo = getGitRepo();
+        final String oldContent = gitRepo.getContent(fromRevision, id);
+        final String newContent = gitRepo.getContent(toRevision, id);
+
+        req.setAttribute("scriptId", id);
+        req.setAttribute("from", fromRevision);
+        req.setAttribute("to", toRevision);
+        req.setAttribute("rows", ScriptDiff.compute(StringUtils.defaultString(oldContent), StringUtils.defaultString(newContent)));
+        req.getView(this, "scriptdiff.jelly").forward(req, rsp);
+    }
+
+    /**
+     * Restores a script to the content it had in the given revision of the git repo, the same way as it is saved via the
+     * UI (the meta information is kept).
+     *
+     * @param req        request
+     * @param rsp        response
+     * @param id         the id of the script
+     * @param revision   the revision to restore
+     * @return forward to 'index', an error if not requested via POST
+     * @throws IOException
+     */
+    public HttpResponse doRestoreScript(StaplerRequest req, StaplerResponse rsp, @QueryParameter("id") String id,
+                                        @QueryParameter("rev") String revision) throws IOException {
+        checkPermission(Hudson.ADMINISTER);
+        if (!"POST".equals(req.getMethod())) {
+            return HttpResponses.error(StaplerResponse.SC_METHOD_NOT_ALLOWED, "POST required");
+        }
+
+        final String content = getGitRepo().getContent(revision, id);
+        if (content == null) {
+            throw new IOException("the script " + id + " does not exist in the revision " + revision);
+        }
+        final Script script = getConfiguration().getScriptById(id);
+        if (script == null) {
+            // the script got removed since
+            saveScriptAndForward(id, id, null, null, content, false, false, 0, null, null, null);
+        } else {
+            saveScriptAndForward(id, script.name, script.comment, script.interpreter, content, script.nonAdministerUsing, script.onlyMaster,
+                    script.getTimeout(), null, null, script.getParameters());
+        }
+        return new HttpRedirect("index");
+    }
+
     /**
      * Loads the script by its name and forwards the request to "edit.jelly".
      *
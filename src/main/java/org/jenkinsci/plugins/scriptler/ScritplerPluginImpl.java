@@ -31,11 +31,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jenkins.model.Jenkins;
+
 import org.jenkinsci.plugins.scriptler.config.Script;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.git.GitScriptlerRepository;
+import org.jenkinsci.plugins.scriptler.run.ScriptRunService;
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
 
 /**
  * @author domi
@@ -45,10 +54,101 @@ public class ScritplerPluginImpl extends Plugin {
 
     private final static Logger LOGGER = Logger.getLogger(ScritplerPluginImpl.class.getName());
 
+    /** ms the scriptler entry points wait at most for the scripts directory to be synchronized after startup */
+    public static final long INIT_TIMEOUT = Long.getLong(ScritplerPluginImpl.class.getName() + ".initTimeout", 60000);
+
+    /** opened once the initial synchronization is done - <code>null</code> if the plugin did not start one (e.g. in unit tests) */
+    private static volatile CountDownLatch initialized;
+
+    private transient ExecutorService initializer;
+
+    // guarded by this
+    private transient ScriptDirectoryWatcher watcher;
+    private transient boolean stopped;
+
+    /**
+     * The scripts directory is synchronized in the background, so that the startup of Jenkins does not depend on the
+     * number of scripts. The scriptler entry points wait for it with {@link #awaitInitialized()}.
+     */
     @Override
     public void start() throws Exception {
         super.start();
-        synchronizeConfig();
+        final CountDownLatch latch = new CountDownLatch(1);
+        initialized = latch;
+        initializer = Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("Scriptler initialization"));
+        initializer.execute(new Runnable() {
+            public void run() {
+                try {
+                    final long start = System.currentTimeMillis();
+                    synchronizeConfig();
+                    LOGGER.log(Level.INFO, "scriptler initialized in {0}ms", System.currentTimeMillis() - start);
+                    startWatcher();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to initialize scriptler", e);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to initialize scriptler", e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        // the thread ends after the synchronization
+        initializer.shutdown();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        ScriptRunService.get().shutdown();
+        if (initializer != null) {
+            initializer.shutdownNow();
+        }
+        synchronized (this) {
+            stopped = true;
+            if (watcher != null) {
+                watcher.stop();
+            }
+        }
+        ScriptlerConfiguration.flush();
+        final GitScriptlerRepository gitRepo = Jenkins.getInstance().getExtensionList(GitScriptlerRepository.class).get(GitScriptlerRepository.class);
+        if (gitRepo != null) {
+            gitRepo.flushCommits();
+            gitRepo.closeRepository();
+        }
+        super.stop();
+    }
+
+    /**
+     * Waits until the scripts directory got synchronized with the configuration after startup, but at most
+     * {@link #INIT_TIMEOUT} ms - after that, the scripts known so far are used.
+     */
+    public static void awaitInitialized() {
+        final CountDownLatch latch = initialized;
+        if (latch == null || latch.getCount() == 0) {
+            return;
+        }
+        try {
+            if (!latch.await(INIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.log(Level.WARNING, "scriptler is still being initialized after {0}ms, continuing with the scripts known so far", INIT_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return is the initial synchronization of the scripts directory done?
+     */
+    public static boolean isInitialized() {
+        final CountDownLatch latch = initialized;
+        return latch == null || latch.getCount() == 0;
+    }
+
+    private synchronized void startWatcher() {
+        if (stopped) {
+            return;
+        }
+        watcher = new ScriptDirectoryWatcher(ScriptlerManagment.getScriptDirectory());
+        watcher.start(ScriptDirectoryWatcher.POLL_INTERVAL);
     }
 
     /**
@@ -67,14 +167,18 @@ public class ScritplerPluginImpl extends Plugin {
             scriptDirectory.mkdirs();
         }
 
-        ScriptlerConfiguration cfg = ScriptlerConfiguration.load();
+        // synchronize the instance everybody uses, the callers which did not wait see the scripts as they are added
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.getConfiguration();
         if (cfg == null) {
-            cfg = new ScriptlerConfiguration(new TreeSet<Script>());
+            new ScriptlerConfiguration(new TreeSet<Script>()).save();
+            ScriptlerConfiguration.flush();
+            cfg = ScriptlerConfiguration.getConfiguration();
         }
 
         SyncUtil.syncDirWithCfg(scriptDirectory, cfg);
 
         cfg.save();
+        ScriptlerConfiguration.flush();
 
     }
 
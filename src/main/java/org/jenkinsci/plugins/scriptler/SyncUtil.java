@@ -1,16 +1,22 @@
 package org.jenkinsci.plugins.scriptler;
 
-import org.apache.commons.io.FileUtils;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.config.Script;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
 import org.jenkinsci.plugins.scriptler.share.ScriptInfo;
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
 import org.jenkinsci.plugins.scriptler.util.ScriptHelper;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,10 +24,21 @@ public class SyncUtil {
 
     private final static Logger LOGGER = Logger.getLogger(SyncUtil.class.getName());
 
+    /** the files in the scripts directory which are synchronized with the configuration */
+    static final FilenameFilter SCRIPT_FILTER = new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+            return name.endsWith(".groovy");
+        }
+    };
+
+    /** number of files read concurrently during a sync */
+    static final int PARALLELISM = Integer.getInteger(SyncUtil.class.getName() + ".parallelism", 8);
+
     private SyncUtil() {
     }
 
     /**
+     * @param scriptDirectory the directory containing the scripts
      * @param cfg             must be saved (by caller) after finishing this all sync
      * @throws IOException
      */
@@ -30,51 +47,146 @@ public class SyncUtil {
         List<File> availablePhysicalScripts = getAvailableScripts(scriptDirectory);
 
         // check if all physical files are available in the configuration
-        // if not, add it to the configuration
+        // if not, add it to the configuration. The metadata of the known scripts belongs to the configuration, they are not read.
+        List<File> newFiles = new ArrayList<File>();
         for (File file : availablePhysicalScripts) {
             if (cfg.getScriptById(file.getName()) == null) {
-                final ScriptInfo info = ScriptHelper.extractScriptInfo(FileUtils.readFileToString(file, "UTF-8"));
-                if (info != null) {
-                    final List<String> paramList = info.getParameters();
-                    Parameter[] parameters = new Parameter[paramList == null ? 0 : paramList.size()];
-                    for (int i = 0; i < parameters.length; i++) {
-                        parameters[i] = new Parameter(paramList.get(i), null);
-                    }
-                    cfg.addOrReplace(new Script(file.getName(), info.getName(), info.getInterpreter(), info.getComment(), false, parameters, false));
-                } else {
-                    cfg.addOrReplace(new Script(file.getName(), file.getName(), "groovy", Messages.script_loaded_from_directory(), false, null, false));
-                }
-
+                newFiles.add(file);
             }
         }
 
+        // collected and applied at once, each change of the configuration copies all scripts
+        List<Script> newScripts = readScripts(newFiles);
+        cfg.addOrReplaceAll(newScripts);
+        LOGGER.log(Level.FINE, "{0}: {1} new scripts", new Object[] { scriptDirectory, newScripts.size() });
+
         // check if all scripts in the configuration are physically available
-        // if not, mark it as missing
-        Set<Script> unavailableScripts = new HashSet<Script>();
+        // if not, mark it as missing. A single listing instead of a check per script, this is slow on network drives.
+        final String[] names = scriptDirectory.list();
+        final Set<String> existing = names == null ? Collections.<String> emptySet() : new HashSet<String>(Arrays.asList(names));
+        Set<Script> changedScripts = new HashSet<Script>();
         for (Script s : cfg.getScripts()) {
             // only check the scripts belonging to this repodir
-            if ((new File(scriptDirectory, s.getScriptPath()).exists())) {
-                s.setAvailable(true);
+            final String path = s.getScriptPath();
+            final boolean available = path.indexOf('/') < 0 && path.indexOf(File.separatorChar) < 0 ? existing.contains(path) : new File(scriptDirectory,
+                    path).exists();
+            final Script changedScript = checkAvailability(scriptDirectory, s, available);
+            if (changedScript != null) {
+                changedScripts.add(changedScript);
+            }
+        }
+
+        cfg.addOrReplaceAll(changedScripts);
+    }
+
+    /**
+     * Creates the scripts of the given files, read in parallel (see {@link #PARALLELISM}) - reading many small files one
+     * after the other is slow on network drives.
+     *
+     * @param files the files to create the scripts of
+     * @return the scripts, in the same order as the files
+     */
+    private static List<Script> readScripts(List<File> files) throws IOException {
+        final List<Script> read = new ArrayList<Script>(files.size());
+        if (files.isEmpty()) {
+            return read;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARALLELISM, files.size()), new NamedDaemonThreadFactory("Scriptler sync"));
+        try {
+            final List<Callable<Script>> tasks = new ArrayList<Callable<Script>>(files.size());
+            for (final File file : files) {
+                tasks.add(new Callable<Script>() {
+                    public Script call() throws IOException {
+                        return createScript(file);
+                    }
+                });
+            }
+            for (Future<Script> future : executor.invokeAll(tasks)) {
+                read.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading the scripts");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read the scripts", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return read;
+    }
+
+    /**
+     * Applies only the given entries of the directory to the configuration - the incremental variant of
+     * {@link #syncDirWithCfg(File, ScriptlerConfiguration)}.
+     *
+     * @param scriptDirectory the directory containing the scripts
+     * @param cfg             must be saved (by caller) after finishing this all sync
+     * @param fileNames       the names of the files which have been created, changed or deleted - new files are only
+     *                        added if they match {@link #SCRIPT_FILTER}, like with the full sync
+     * @throws IOException
+     */
+    public static void syncFilesWithCfg(File scriptDirectory, ScriptlerConfiguration cfg, Collection<String> fileNames) throws IOException {
+        List<Script> changedScripts = new ArrayList<Script>();
+        for (String fileName : fileNames) {
+            final File file = new File(scriptDirectory, fileName);
+            final Script s = cfg.getScriptById(fileName);
+            if (s == null) {
+                if (SCRIPT_FILTER.accept(scriptDirectory, fileName) && file.isFile()) {
+                    changedScripts.add(createScript(file));
+                }
             } else {
-                unavailableScripts.add(new Script(s.getId(), s.comment, "shebang", false, false, false));
-                LOGGER.info("for repo '" + scriptDirectory.getAbsolutePath() + "' " + s + " is not available!");
+                final Script changed = checkAvailability(scriptDirectory, s);
+                if (changed != null) {
+                    changedScripts.add(changed);
+                }
+            }
+        }
+        cfg.addOrReplaceAll(changedScripts);
+    }
+
+    private static Script createScript(File file) throws IOException {
+        // only the head of the file is read, see ScriptHelper.MAX_META_SCAN_LENGTH
+        final ScriptInfo info = ScriptHelper.extractScriptInfo(file);
+        if (info != null) {
+            final List<String> paramList = info.getParameters();
+            Parameter[] parameters = new Parameter[paramList == null ? 0 : paramList.size()];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = new Parameter(paramList.get(i), null);
             }
+            return new Script(file.getName(), info.getName(), info.getInterpreter(), info.getComment(), false, parameters, false);
+        } else {
+            return new Script(file.getName(), file.getName(), "groovy", Messages.script_loaded_from_directory(), false, null, false);
         }
+    }
+
+    /**
+     * @return the script to replace the given one with - <code>null</code> if its availability did not change
+     */
+    private static Script checkAvailability(File scriptDirectory, Script s) {
+        return checkAvailability(scriptDirectory, s, new File(scriptDirectory, s.getScriptPath()).exists());
+    }
 
-        for (Script script : unavailableScripts) {
-            cfg.addOrReplace(script);
+    private static Script checkAvailability(File scriptDirectory, Script s, boolean available) {
+        if (!available) {
+            LOGGER.info("for repo '" + scriptDirectory.getAbsolutePath() + "' " + s + " is not available!");
+        }
+        if (s.available == available) {
+            return null;
         }
+        // the configured instances are shared with concurrent readers, replace instead of changing it
+        Script changed = s.copy();
+        changed.setAvailable(available);
+        return changed;
     }
 
     /** search into the declared backup directory for backup archives */
     private static List<File> getAvailableScripts(File scriptDirectory) throws IOException {
         LOGGER.log(Level.FINE, "Listing files of {0}", scriptDirectory.getAbsoluteFile());
 
-        File[] scriptFiles = scriptDirectory.listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return name.endsWith(".groovy");
-            }
-        });
+        File[] scriptFiles = scriptDirectory.listFiles(SCRIPT_FILTER);
 
         List<File> fileList;
         if (scriptFiles == null) {
@@ -85,5 +197,4 @@ public class SyncUtil {
 
         return fileList;
     }
-
 }
@@ -15,9 +15,9 @@ import hudson.remoting.Callable;
 import hudson.security.Permission;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.util.StreamTaskListener;
 
 import java.io.Serializable;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -32,12 +32,14 @@ import jenkins.model.Jenkins.MasterComputer;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.scriptler.Messages;
 import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.config.Script;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.metrics.ScriptlerMetrics;
 import org.jenkinsci.plugins.scriptler.util.*;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.kohsuke.stapler.StaplerRequest;
@@ -57,12 +59,19 @@ public class ScriptlerBuilder extends Builder implements Serializable {
     private String scriptId;
     private boolean propagateParams = false;
     private Parameter[] parameters;
+    /** max number of seconds the script may take, <code>0</code> uses the default of the script */
+    private long timeout;
 
     public ScriptlerBuilder(String builderId, String scriptId, boolean propagateParams, Parameter[] parameters) {
+        this(builderId, scriptId, propagateParams, parameters, 0);
+    }
+
+    public ScriptlerBuilder(String builderId, String scriptId, boolean propagateParams, Parameter[] parameters, long timeout) {
         this.builderId = builderId;
         this.scriptId = scriptId;
         this.parameters = parameters;
         this.propagateParams = propagateParams;
+        this.timeout = timeout;
     }
 
     public String getScriptId() {
@@ -81,6 +90,10 @@ public class ScriptlerBuilder extends Builder implements Serializable {
         return propagateParams;
     }
 
+    public long getTimeout() {
+        return timeout;
+    }
+
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
         boolean isOk = false;
@@ -107,20 +120,30 @@ public class ScriptlerBuilder extends Builder implements Serializable {
                 for (Parameter parameter : parameters) {
                     expandedParams.add(new Parameter(parameter.getName(), TokenMacro.expandAll(build, listener, parameter.getValue())));
                 }
-                final Object output;
+                Object output = null;
+                // counts the bytes written by the script, like ScriptHelper.runScript does
+                final CountingOutputStream countingOut = new CountingOutputStream(listener.getLogger());
                 Callable<Object,RuntimeException> executableScript = ExecutableScript.withScriptInfo(script)
                         .withParams(expandedParams).withLauncher(launcher)
-                        .withListener(listener).withBuild(build).build();
-                if (script.onlyMaster) {
-                    // When run on master, make build, launcher, listener available to script
-                    output = MasterComputer.localChannel.call(executableScript);
-                } else {
-                    output = launcher.getChannel().call(executableScript);
-                }
-                if (output instanceof Boolean && Boolean.FALSE.equals(output)) {
-                    isOk = false;
-                } else {
-                    isOk = true;
+                        .withListener(new StreamTaskListener(countingOut)).withBuild(build)
+                        .withTimeout(timeout > 0 ? timeout : script.getTimeout()).build();
+                final long start = ScriptlerMetrics.start();
+                try {
+                    if (script.onlyMaster) {
+                        // When run on master, make build, launcher, listener available to script
+                        output = MasterComputer.localChannel.call(executableScript);
+                    } else {
+                        output = launcher.getChannel().call(executableScript);
+                    }
+                    if (output instanceof Boolean && Boolean.FALSE.equals(output)) {
+                        isOk = false;
+                    } else {
+                        isOk = true;
+                    }
+                } finally {
+                    final String node = script.onlyMaster || StringUtils.isEmpty(build.getBuiltOnStr()) ? "(master)" : build.getBuiltOnStr();
+                    ScriptlerMetrics.get().record(ScriptlerMetrics.EntryPoint.BUILDER, scriptId, node, ScriptlerMetrics.since(start),
+                            !isOk, countingOut.getByteCount());
                 }
             } catch (Exception e) {
                 listener.getLogger().print(Messages.scriptExecutionFailed(scriptId) + " - " + e.getMessage());
@@ -187,6 +210,7 @@ public class ScriptlerBuilder extends Builder implements Serializable {
             } else {
                 final String id = formData.optString("scriptlerScriptId");
                 final boolean inPropagateParams = formData.getBoolean("propagateParams");
+                final long inTimeout = Math.max(0, formData.optLong("timeout"));
                 if (StringUtils.isBlank(builderId)) {
                     // create a unique id - this is only used to identify the builder if a user without privileges modifies the job.
                     builderId = System.currentTimeMillis() + "_" + CURRENT_ID.addAndGet(1);
@@ -198,7 +222,7 @@ public class ScriptlerBuilder extends Builder implements Serializable {
                     } catch (ServletException e) {
                         throw new FormException(Messages.parameterExtractionFailed(), "parameters");
                     }
-                    builder = new ScriptlerBuilder(builderId, id, inPropagateParams, params);
+                    builder = new ScriptlerBuilder(builderId, id, inPropagateParams, params, inTimeout);
                 }
             }
             if (builder == null) {
@@ -209,14 +233,7 @@ public class ScriptlerBuilder extends Builder implements Serializable {
 
         public Set<Script> getScripts() {
             // TODO currently only script for RUN_SCRIPT permissions are returned?
-            final Set<Script> scripts = getConfig().getScripts();
-            final Set<Script> scriptsForBuilder = new HashSet<Script>();
-            for (Script script : scripts) {
-                if (script.nonAdministerUsing) {
-                    scriptsForBuilder.add(script);
-                }
-            }
-            return scriptsForBuilder;
+            return getConfig().getUserScripts();
         }
 
         private ScriptlerManagment getScriptler() {
@@ -0,0 +1,219 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Writes the {@link ScriptlerConfiguration} behind the callers of {@link ScriptlerConfiguration#save()}: all changes
+ * within the coalescing window end up in a single serialization, which is written to a temporary file and renamed over
+ * <code>scriptler.xml</code> (see {@link ReplacingFileWriter}). If the serialized content did not change, neither the file is written nor the
+ * {@link SaveableListener}s are notified. The metadata of the changed scripts is written to the {@link ScriptStore}.
+ * <p>
+ * The binary snapshot of all scripts (see {@link ScriptSnapshotFile}) is written once the store stopped changing for
+ * {@link #SNAPSHOT_DELAY}, as it contains all scripts, or right away with {@link #flush()}.
+ */
+class ConfigurationPersister {
+
+    private final static Logger LOGGER = Logger.getLogger(ConfigurationPersister.class.getName());
+
+    /** ms to wait for further changes before writing */
+    static final long WINDOW = Long.getLong(ConfigurationPersister.class.getName() + ".window", 500);
+
+    /** ms to wait for further changes of the scripts before writing the binary snapshot */
+    static final long SNAPSHOT_DELAY = Long.getLong(ConfigurationPersister.class.getName() + ".snapshotDelay", 30 * 1000);
+
+    private static final String HEADER = "<?xml version='1.0' encoding='UTF-8'?>\n";
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory(
+            "Scriptler configuration writer"));
+
+    private final XStream xstream;
+    private final long window;
+    private final long snapshotDelay;
+
+    // guarded by this
+    private ScriptlerConfiguration dirty;
+    private XmlFile dirtyFile;
+    private ScheduledFuture<?> pending;
+    private ScriptlerConfiguration snapshotCfg;
+    private XmlFile snapshotFile;
+    private ScheduledFuture<?> pendingSnapshot;
+
+    // guarded by the write lock
+    private final Object writeLock = new Object();
+    private String writtenFile;
+    private String writtenDigest;
+
+    ConfigurationPersister(XStream xstream, long window) {
+        this(xstream, window, SNAPSHOT_DELAY);
+    }
+
+    ConfigurationPersister(XStream xstream, long window, long snapshotDelay) {
+        this.xstream = xstream;
+        this.window = window;
+        this.snapshotDelay = snapshotDelay;
+    }
+
+    /**
+     * Marks the configuration to be written to the given file, the write happens at the end of the window at the latest.
+     */
+    synchronized void markDirty(ScriptlerConfiguration cfg, XmlFile file) {
+        dirty = cfg;
+        dirtyFile = file;
+        if (pending == null) {
+            pending = WRITER.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        writePending();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.SEVERE, "Failed to save the scriptler configuration", e);
+                    }
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a pending change and the snapshot right away, returns after they are on disk.
+     */
+    void flush() throws IOException {
+        synchronized (writeLock) {
+            writePending();
+            writePendingSnapshot();
+        }
+    }
+
+    /** (re)starts the delay of the snapshot */
+    private synchronized void markSnapshotStale(ScriptlerConfiguration cfg, XmlFile file) {
+        snapshotCfg = cfg;
+        snapshotFile = file;
+        if (pendingSnapshot != null) {
+            pendingSnapshot.cancel(false);
+        }
+        pendingSnapshot = WRITER.schedule(new Runnable() {
+            public void run() {
+                try {
+                    writePendingSnapshot();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to write the snapshot of the scriptler configuration", e);
+                }
+            }
+        }, snapshotDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePendingSnapshot() throws IOException {
+        synchronized (writeLock) {
+            final ScriptlerConfiguration cfg;
+            final XmlFile file;
+            synchronized (this) {
+                if (pendingSnapshot != null) {
+                    pendingSnapshot.cancel(false);
+                    pendingSnapshot = null;
+                }
+                cfg = snapshotCfg;
+                file = snapshotFile;
+                snapshotCfg = null;
+                snapshotFile = null;
+            }
+            if (cfg != null && cfg.writeSnapshot(file)) {
+                LOGGER.log(Level.FINE, "wrote the snapshot of {0}", file);
+            }
+        }
+    }
+
+    private void writePending() throws IOException {
+        synchronized (writeLock) {
+            final ScriptlerConfiguration cfg;
+            final XmlFile file;
+            synchronized (this) {
+                if (pending != null) {
+                    pending.cancel(false);
+                    pending = null;
+                }
+                cfg = dirty;
+                file = dirtyFile;
+                dirty = null;
+                dirtyFile = null;
+            }
+            if (cfg != null) {
+                write(cfg, file);
+                if (cfg.isSnapshotStale()) {
+                    markSnapshotStale(cfg, file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return was the file written?
+     */
+    private boolean write(ScriptlerConfiguration cfg, XmlFile file) throws IOException {
+        // only the scripts changed since the last write, each to its own file
+        final boolean scriptsWritten = cfg.writeScripts(file);
+
+        final StringWriter xml = new StringWriter();
+        xml.write(HEADER);
+        xstream.toXML(cfg, xml);
+        final String content = xml.toString();
+        final String digest = Util.getDigestOf(content);
+
+        final String path = file.getFile().getAbsolutePath();
+        if (!path.equals(writtenFile)) {
+            writtenFile = path;
+            writtenDigest = digestOf(file);
+        }
+        if (digest.equals(writtenDigest)) {
+            LOGGER.log(Level.FINE, "{0} is up to date", path);
+            if (scriptsWritten) {
+                onWritten(cfg, file);
+            }
+            return scriptsWritten;
+        }
+
+        final ReplacingFileWriter w = new ReplacingFileWriter(file.getFile(), "UTF-8");
+        try {
+            w.write(content);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+        writtenDigest = digest;
+        onWritten(cfg, file);
+        return true;
+    }
+
+    /**
+     * Called after the configuration got written to the file.
+     */
+    protected void onWritten(ScriptlerConfiguration cfg, XmlFile file) {
+        SaveableListener.fireOnChange(cfg, file);
+    }
+
+    private static String digestOf(XmlFile file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        final InputStream in = new FileInputStream(file.getFile());
+        try {
+            return Util.getDigestOf(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes a file to a temporary file next to it, which is renamed over the file by {@link #commit()}. Unlike the
+ * {@link hudson.util.AtomicFileWriter} of the core version we depend on, the file is never deleted before the rename:
+ * on POSIX the rename replaces it atomically, so readers see either the old or the new content. Where a rename cannot
+ * replace an existing file (Windows), the file is moved to <code>&lt;name&gt;.bak</code> first and kept there;
+ * {@link #restoreBackup(File)} brings it back if the process died in between.
+ */
+class ReplacingFileWriter extends Writer {
+
+    private final File file;
+    private final File tmp;
+    private final Writer out;
+
+    ReplacingFileWriter(File file, String encoding) throws IOException {
+        this.file = file;
+        final File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), encoding));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Replaces the file with the written content.
+     */
+    void commit() throws IOException {
+        out.close();
+        replace(tmp, file);
+    }
+
+    /**
+     * Renames the temporary file over the file without deleting the file first, falling back to moving the file to its
+     * backup where the rename cannot replace it.
+     */
+    static void replace(File tmp, File file) throws IOException {
+        if (tmp.renameTo(file)) {
+            return;
+        }
+        final File backup = getBackup(file);
+        backup.delete();
+        if (file.exists() && !file.renameTo(backup)) {
+            throw new IOException("Failed to move " + file + " to " + backup);
+        }
+        if (!tmp.renameTo(file)) {
+            backup.renameTo(file);
+            throw new IOException("Failed to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Drops the written content, the file stays as it is. Does nothing after {@link #commit()}.
+     */
+    void abort() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the temporary file gets deleted anyway
+        }
+        tmp.delete();
+    }
+
+    /**
+     * Moves the backup back, if the file is missing because a {@link #commit()} was interrupted after moving the file to
+     * its backup.
+     */
+    static void restoreBackup(File file) {
+        final File backup = getBackup(file);
+        if (!file.exists() && backup.exists()) {
+            backup.renameTo(file);
+        }
+    }
+
+    static File getBackup(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+}
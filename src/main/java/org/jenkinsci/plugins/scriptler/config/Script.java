@@ -52,6 +52,9 @@ public class Script implements Comparable<Script>, NamedResource {
     public String interpreter;
     private Parameter[] parameters;
 
+    /** default time in seconds an execution of the script may take, <code>0</code> means no limit */
+    private long timeout;
+
     public boolean available = true;
 
     /** script is only transient, because it will not be saved in the xml but on the file system. Therefore it has to be materialized before usage! */
@@ -72,16 +75,19 @@ public class Script implements Comparable<Script>, NamedResource {
     /** used during plugin start to synchronize available scripts */
     public Script(String id, String comment, String interpreter, boolean available, boolean nonAdministerUsing, boolean onlyMaster) {
         this(id, id, comment, interpreter, null, null, null, nonAdministerUsing, null, false);
+        this.available = available;
     }
 
     /** Constructor to create a script imported from a foreign catalog. */
     public Script(String id, String name, String comment, String interpreter, boolean available, String originCatalog, String originScript, String originDate, Parameter[] parameters) {
         this(id, name, comment, interpreter, originCatalog, originScript, originDate, false, parameters, false);
+        this.available = available;
     }
 
     /** used to merge scripts */
     public Script(String id, String name, String comment, String interpreter, boolean available, String originCatalog, String originScript, String originDate, boolean nonAdministerUsing, Parameter[] parameters, boolean onlyMaster) {
         this(id, name, comment, interpreter, originCatalog, originScript, originDate, nonAdministerUsing, parameters, onlyMaster);
+        this.available = available;
     }
 
     /** used to merge scripts */
@@ -127,6 +133,28 @@ public class Script implements Comparable<Script>, NamedResource {
         return parameters;
     }
 
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /** @return the default time in seconds an execution of the script may take, <code>0</code> means no limit */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return a copy of this script, which can be changed (e.g. the parameters of a single execution) without affecting the
+     *         one held by the configuration
+     */
+    public Script copy() {
+        Script copy = new Script(id, name, comment, interpreter, originCatalog, originScript, originDate, nonAdministerUsing, parameters == null ? null
+                : parameters.clone(), onlyMaster);
+        copy.available = available;
+        copy.timeout = timeout;
+        copy.script = script;
+        return copy;
+    }
+
     /*
      * (non-Javadoc)
      * 
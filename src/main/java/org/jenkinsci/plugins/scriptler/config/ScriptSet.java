@@ -24,42 +24,78 @@
 package org.jenkinsci.plugins.scriptler.config;
 
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.logging.Logger;
 
-/** @author imod */
+/**
+ * The scripts known to scriptler. The state is published as an immutable {@link Snapshot}: readers get a consistent
+ * version with a single volatile read and never block, writers derive the next snapshot from the current one and
+ * publish it under the writer lock (the instance monitor).
+ *
+ * @author imod
+ */
 public class ScriptSet {
-    // have it sorted
-    protected Set<Script> scriptSet = new TreeSet<Script>();
+    // the former persisted state, only read when loading the single file layout (see ScriptStore)
+    protected volatile Set<Script> scriptSet = new TreeSet<Script>();
+
+    // not persisted, gets built on first access after loading
+    private transient volatile Snapshot snapshot;
 
     public Script getScriptById(String id) {
-        for (Script scr : scriptSet) {
-            if (scr.getId().equals(id)) {
-                return scr;
-            }
+        if (id == null) {
+            return null;
         }
-        return null;
+        return getSnapshot().getScriptById(id);
     }
 
-    public void removeScript(String id) {
-        Script s = getScriptById(id);
-        scriptSet.remove(s);
+    public synchronized void removeScript(String id) {
+        final Snapshot current = getSnapshot();
+        if (current.getScriptById(id) != null) {
+            publish(current.change(Collections.singletonMap(id, (Script) null), current.getVersion() + 1));
+            changed(Collections.singleton(id), true);
+        }
     }
 
     public void addOrReplace(Script script) {
         if (script != null) {
-            Script oldScript = this.getScriptById(script.getId());
+            addOrReplaceAll(Collections.singleton(script));
+        }
+    }
+
+    /**
+     * Adds or replaces all the given scripts, publishing a single new snapshot.
+     */
+    public synchronized void addOrReplaceAll(Collection<Script> scripts) {
+        if (scripts.isEmpty()) {
+            return;
+        }
+        final Snapshot current = getSnapshot();
+        final Map<String, Script> changes = new LinkedHashMap<String, Script>();
+        boolean idsChanged = false;
+        for (Script script : scripts) {
+            Script oldScript = changes.containsKey(script.getId()) ? changes.get(script.getId()) : current.getScriptById(script.getId());
+            Script newScript = script;
             if (oldScript != null) {
-                Script mergedScript = merge(oldScript, script);
-                scriptSet.remove(script);
-                scriptSet.add(mergedScript);
+                newScript = merge(oldScript, script);
             } else {
-                scriptSet.add(script);
+                idsChanged = true;
             }
+            changes.put(newScript.getId(), newScript);
         }
+        publish(current.change(changes, current.getVersion() + 1));
+        changed(changes.keySet(), idsChanged);
     }
 
     private Script merge(Script origin, Script newScript) {
@@ -69,25 +105,239 @@ public class ScriptSet {
         String originCatalog = StringUtils.isEmpty(newScript.originCatalog) ? origin.originCatalog : newScript.originCatalog;
         String originScript = StringUtils.isEmpty(newScript.originScript) ? origin.originScript : newScript.originScript;
         String originDate = StringUtils.isEmpty(newScript.originDate) ? origin.originDate : newScript.originDate;
-        return new Script(newScript.getId(), name, comment, interpreter, newScript.available, originCatalog, originScript, originDate, newScript.nonAdministerUsing, newScript.getParameters(), newScript.onlyMaster);
+        Script merged = new Script(newScript.getId(), name, comment, interpreter, newScript.available, originCatalog, originScript, originDate, newScript.nonAdministerUsing, newScript.getParameters(), newScript.onlyMaster);
+        merged.setTimeout(newScript.getTimeout());
+        return merged;
     }
 
+    /**
+     * @return sorted, unmodifiable set of all scripts of the current snapshot - later changes are not reflected
+     */
     public final Set<Script> getScripts() {
-        return Collections.unmodifiableSet(scriptSet);
+        return getSnapshot().getScripts();
     }
 
+    /**
+     * @return sorted, unmodifiable set of the scripts usable by non administrators (see {@link Script#nonAdministerUsing})
+     *         of the current snapshot - later changes are not reflected
+     */
     public final Set<Script> getUserScripts() {
-        Set<Script> userScripts = new TreeSet<Script>();
-        for (Script script : scriptSet) {
-            if (script.nonAdministerUsing) {
-                userScripts.add(script);
+        return getSnapshot().getUserScripts();
+    }
+
+    public synchronized void setScripts(Set<Script> scripts) {
+        final Snapshot current = snapshot;
+        final Snapshot published = publish(new Snapshot(sortedById(scripts), current == null ? 0 : current.getVersion() + 1));
+        final Set<String> ids = new HashSet<String>();
+        if (current != null) {
+            ids.addAll(current.scriptsById.keySet());
+        }
+        ids.addAll(published.scriptsById.keySet());
+        changed(ids, true);
+    }
+
+    /**
+     * Publishes the scripts read when loading the configuration as the first version, they are not considered changed.
+     *
+     * @param scripts handed over, must not be changed anymore - a list already sorted by id is used as it is
+     */
+    protected synchronized void setLoadedScripts(Collection<Script> scripts) {
+        publish(new Snapshot(sortedById(scripts), 0));
+    }
+
+    /**
+     * @return the current state, use it to do several reads on the same version
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = publish(new Snapshot(sortedById(loadScripts()), 0));
+                }
+            }
+        }
+        return current;
+    }
+
+    /** must only be called by writers */
+    private Snapshot publish(Snapshot published) {
+        scriptSet = null;
+        snapshot = published;
+        return published;
+    }
+
+    /**
+     * Loads all scripts on the first access, called under the writer lock.
+     */
+    protected Collection<Script> loadScripts() {
+        final Set<Script> persisted = scriptSet;
+        return persisted == null ? Collections.<Script> emptySet() : persisted;
+    }
+
+    /**
+     * Called by the writers after publishing a new snapshot, under the writer lock.
+     *
+     * @param ids        the scripts which have been added, replaced or removed
+     * @param idsChanged have scripts been added or removed?
+     */
+    protected void changed(Collection<String> ids, boolean idsChanged) {
+    }
+
+    /**
+     * @param scripts a list is handed over and used as it is if it is sorted by id already, other collections are copied
+     * @return the scripts sorted by id, they only get sorted if they are not in that order already
+     */
+    private static List<Script> sortedById(Collection<Script> scripts) {
+        final List<Script> sorted = scripts instanceof List ? (List<Script>) scripts : new ArrayList<Script>(scripts);
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i - 1).getId().compareTo(sorted.get(i).getId()) > 0) {
+                Collections.sort(sorted, new ByIdSorter());
+                break;
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the index of the script with the given id in the scripts sorted by id, <code>(-(insertion point) - 1)</code>
+     *         if there is none (see {@link Collections#binarySearch(List, Object)})
+     */
+    private static int indexOf(List<Script> sorted, String id) {
+        int low = 0;
+        int high = sorted.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = sorted.get(mid).getId().compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * An immutable version of the scripts. The {@link Script} instances are shared with later snapshots and must not be
+     * changed, use {@link Script#copy()} to get one to work with.
+     */
+    public static final class Snapshot {
+        private final long version;
+        // both sorted by id
+        private final List<Script> scripts;
+        private final List<Script> userScripts;
+        private final Map<String, Script> scriptsById;
+
+        /**
+         * @param sorted all scripts, sorted by id - must not be changed anymore
+         */
+        private Snapshot(List<Script> sorted, long version) {
+            this.version = version;
+            final List<Script> users = new ArrayList<Script>();
+            final Map<String, Script> byId = new HashMap<String, Script>(sorted.size() * 4 / 3 + 1);
+            for (Script script : sorted) {
+                byId.put(script.getId(), script);
+                if (script.nonAdministerUsing) {
+                    users.add(script);
+                }
             }
+            this.scripts = sorted;
+            this.userScripts = users;
+            this.scriptsById = byId;
+        }
+
+        private Snapshot(List<Script> scripts, List<Script> userScripts, Map<String, Script> scriptsById, long version) {
+            this.version = version;
+            this.scripts = scripts;
+            this.userScripts = userScripts;
+            this.scriptsById = scriptsById;
+        }
+
+        /**
+         * Derives the next version by applying only the given changes: the unchanged scripts are neither sorted nor
+         * filtered again, the lists and the index are copied and each changed script is put at its position.
+         *
+         * @param changes the new script by its id, <code>null</code> to remove it
+         */
+        private Snapshot change(Map<String, Script> changes, long version) {
+            final List<Script> sorted = new ArrayList<Script>(scripts);
+            final List<Script> users = new ArrayList<Script>(userScripts);
+            final Map<String, Script> byId = new HashMap<String, Script>(scriptsById);
+            for (Map.Entry<String, Script> change : changes.entrySet()) {
+                final Script script = change.getValue();
+                put(sorted, change.getKey(), script);
+                put(users, change.getKey(), script != null && script.nonAdministerUsing ? script : null);
+                if (script == null) {
+                    byId.remove(change.getKey());
+                } else {
+                    byId.put(change.getKey(), script);
+                }
+            }
+            return new Snapshot(sorted, users, byId, version);
+        }
+
+        /** replaces, inserts or - if the script is <code>null</code> - removes the script with the given id */
+        private static void put(List<Script> sorted, String id, Script script) {
+            final int index = indexOf(sorted, id);
+            if (index >= 0) {
+                if (script == null) {
+                    sorted.remove(index);
+                } else {
+                    sorted.set(index, script);
+                }
+            } else if (script != null) {
+                sorted.add(-index - 1, script);
+            }
+        }
+
+        /**
+         * @return incremented on each change, starting at <code>0</code> after loading
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public Script getScriptById(String id) {
+            return scriptsById.get(id);
+        }
+
+        public Set<Script> getScripts() {
+            return new SortedScripts(scripts);
+        }
+
+        public Set<Script> getUserScripts() {
+            return new SortedScripts(userScripts);
         }
-        return userScripts;
     }
 
-    public void setScripts(Set<Script> scripts) {
-        this.scriptSet = scripts;
+    /**
+     * An unmodifiable set view of scripts sorted by id.
+     */
+    private static final class SortedScripts extends AbstractSet<Script> {
+        private final List<Script> sorted;
+
+        SortedScripts(List<Script> sorted) {
+            this.sorted = Collections.unmodifiableList(sorted);
+        }
+
+        @Override
+        public Iterator<Script> iterator() {
+            return sorted.iterator();
+        }
+
+        @Override
+        public int size() {
+            return sorted.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Script && indexOf(sorted, ((Script) o).getId()) >= 0;
+        }
     }
 
 }
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary copy of all scripts of the {@link ScriptStore}, which is read without reflection when starting up.
+ * The XML files stay the source of truth: the snapshot is only used if it was written for the same checksum of the
+ * store (see {@link ScriptStore#getChecksum(List)}), otherwise it is ignored and written again.
+ */
+class ScriptSnapshotFile {
+
+    private final static Logger LOGGER = Logger.getLogger(ScriptSnapshotFile.class.getName());
+
+    private static final int MAGIC = 0x53435253; // "SCRS"
+    /** increment on any change of the format, snapshots of other versions are ignored */
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    ScriptSnapshotFile(File file) {
+        this.file = file;
+    }
+
+    boolean exists() {
+        ReplacingFileWriter.restoreBackup(file);
+        return file.exists();
+    }
+
+    /**
+     * @param checksum the checksum of the store the snapshot must have been written for
+     * @return the scripts in the order they were written - <code>null</code> if there is no usable snapshot
+     */
+    List<Script> read(String checksum) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    LOGGER.log(Level.FINE, "{0} has an unknown format", file);
+                    return null;
+                }
+                if (!checksum.equals(in.readUTF())) {
+                    LOGGER.log(Level.FINE, "{0} is outdated", file);
+                    return null;
+                }
+                final int count = in.readInt();
+                final List<Script> scripts = new ArrayList<Script>(count);
+                for (int i = 0; i < count; i++) {
+                    scripts.add(readScript(in));
+                }
+                return scripts;
+            } finally {
+                in.close();
+            }
+        } catch (EOFException e) {
+            LOGGER.log(Level.WARNING, "{0} is truncated, the scripts are read from the XML files", file);
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + ", the scripts are read from the XML files", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param checksum the checksum of the store the given scripts are the content of
+     */
+    void write(String checksum, Collection<Script> scripts) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(checksum);
+            out.writeInt(scripts.size());
+            for (Script script : scripts) {
+                writeScript(out, script);
+            }
+        } finally {
+            out.close();
+        }
+        try {
+            ReplacingFileWriter.replace(tmp, file);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    void delete() {
+        file.delete();
+    }
+
+    private static Script readScript(DataInputStream in) throws IOException {
+        final String id = readString(in);
+        final String name = readString(in);
+        final String comment = readString(in);
+        final String interpreter = readString(in);
+        final String originCatalog = readString(in);
+        final String originScript = readString(in);
+        final String originDate = readString(in);
+        final boolean available = in.readBoolean();
+        final boolean nonAdministerUsing = in.readBoolean();
+        final boolean onlyMaster = in.readBoolean();
+        final long timeout = in.readLong();
+        final int parameterCount = in.readInt();
+        Parameter[] parameters = null;
+        if (parameterCount >= 0) {
+            parameters = new Parameter[parameterCount];
+            for (int i = 0; i < parameterCount; i++) {
+                parameters[i] = new Parameter(readString(in), readString(in));
+            }
+        }
+        final Script script = new Script(id, name, comment, interpreter, available, originCatalog, originScript, originDate, nonAdministerUsing,
+                parameters, onlyMaster);
+        script.setTimeout(timeout);
+        return script;
+    }
+
+    private static void writeScript(DataOutputStream out, Script script) throws IOException {
+        writeString(out, script.getId());
+        writeString(out, script.name);
+        writeString(out, script.comment);
+        writeString(out, script.interpreter);
+        writeString(out, script.originCatalog);
+        writeString(out, script.originScript);
+        writeString(out, script.originDate);
+        out.writeBoolean(script.available);
+        out.writeBoolean(script.nonAdministerUsing);
+        out.writeBoolean(script.onlyMaster);
+        out.writeLong(script.getTimeout());
+        final Parameter[] parameters = script.getParameters();
+        if (parameters == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(parameters.length);
+            for (Parameter parameter : parameters) {
+                writeString(out, parameter.getName());
+                writeString(out, parameter.getValue());
+            }
+        }
+    }
+
+    /** not {@link DataInputStream#readUTF()}, which is limited to 64k and does not support <code>null</code> */
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import hudson.Util;
+import hudson.XmlFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Stores the metadata of each script in its own small file, next to the <code>scripts</code> directory:
+ * <code>scripts-meta/&lt;id&gt;.xml</code>. The ids are listed in <code>scripts-meta/index</code>, so that a single
+ * script can be looked up without reading the others and changing one script writes only its own file. All scripts are
+ * also kept in <code>scripts-meta/scripts.bin</code> (see {@link ScriptSnapshotFile}) to load them quickly at startup.
+ */
+class ScriptStore {
+
+    static final String DIRECTORY = "scripts-meta";
+    private static final String INDEX = "index";
+    private static final String INDEX_HEADER = "# scriptler script index v1";
+    private static final String SNAPSHOT = "scripts.bin";
+    private static final String XML_HEADER = "<?xml version='1.0' encoding='UTF-8'?>\n";
+
+    private final File directory;
+    private final XStream xstream;
+
+    ScriptStore(File directory, XStream xstream) {
+        this.directory = directory;
+        this.xstream = xstream;
+    }
+
+    /**
+     * @param configFile the <code>scriptler.xml</code> the store belongs to
+     */
+    static ScriptStore forConfigFile(File configFile, XStream xstream) {
+        return new ScriptStore(new File(configFile.getParentFile(), DIRECTORY), xstream);
+    }
+
+    /**
+     * @return has the store been written before? If not, the scripts are still in the former single file layout.
+     */
+    boolean exists() {
+        ReplacingFileWriter.restoreBackup(getIndexFile());
+        return getIndexFile().exists();
+    }
+
+    List<String> readIndex() throws IOException {
+        final List<String> ids = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(getIndexFile()), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    ids.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    void writeIndex(Collection<String> ids) throws IOException {
+        directory.mkdirs();
+        final ReplacingFileWriter w = new ReplacingFileWriter(getIndexFile(), "UTF-8");
+        try {
+            w.write(INDEX_HEADER + "\n");
+            for (String id : ids) {
+                w.write(id + "\n");
+            }
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    /**
+     * @return the script - <code>null</code> if there is no file for the given id
+     */
+    Script read(String id) throws IOException {
+        final XmlFile file = getFile(id);
+        ReplacingFileWriter.restoreBackup(file.getFile());
+        return file.exists() ? (Script) file.read() : null;
+    }
+
+    void write(Script script) throws IOException {
+        final ReplacingFileWriter w = new ReplacingFileWriter(getFile(script.getId()).getFile(), "UTF-8");
+        try {
+            w.write(XML_HEADER);
+            xstream.toXML(script, w);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    void delete(String id) {
+        getFile(id).delete();
+    }
+
+    ScriptSnapshotFile getSnapshotFile() {
+        return new ScriptSnapshotFile(new File(directory, SNAPSHOT));
+    }
+
+    /**
+     * A checksum of the content of the index and the size and modification time of the files of the given scripts - a
+     * listing of the files, they are not read.
+     *
+     * @param ids the content of the index
+     */
+    String getChecksum(List<String> ids) throws IOException {
+        final MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        final InputStream in = new FileInputStream(getIndexFile());
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                md5.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        for (String id : ids) {
+            final File file = getFile(id).getFile();
+            md5.update((id + ' ' + file.length() + ' ' + file.lastModified() + '\n').getBytes("UTF-8"));
+        }
+        return Util.toHexString(md5.digest());
+    }
+
+    private XmlFile getFile(String id) {
+        return new XmlFile(xstream, new File(directory, Util.rawEncode(id) + ".xml"));
+    }
+
+    private File getIndexFile() {
+        return new File(directory, INDEX);
+    }
+}
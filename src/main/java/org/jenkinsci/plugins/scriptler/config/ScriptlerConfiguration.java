@@ -26,15 +26,19 @@ package org.jenkinsci.plugins.scriptler.config;
 import hudson.BulkChange;
 import hudson.XmlFile;
 import hudson.model.Saveable;
-import hudson.model.listeners.SaveableListener;
 import hudson.util.XStream2;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +49,9 @@ import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
 import com.thoughtworks.xstream.XStream;
 
 /**
+ * The global settings are stored in <code>scriptler.xml</code>, the metadata of each script in its own file (see
+ * {@link ScriptStore}). All scripts are loaded from the binary snapshot of the store if it is up to date, otherwise
+ * single scripts are read on demand until all scripts are needed.
  */
 public final class ScriptlerConfiguration extends ScriptSet implements Saveable {
 
@@ -60,53 +67,263 @@ public final class ScriptlerConfiguration extends ScriptSet implements Saveable
 
     private boolean allowRunScriptEdit = false;
 
+    /** single scripts are read from the store until all are loaded */
+    private transient volatile LazyScripts lazy;
+
+    /** the scripts changed since the last write - guarded by this */
+    private transient Set<String> dirtyIds;
+    private transient boolean indexDirty;
+
+    /** the binary snapshot of the store does not match the store anymore */
+    private transient volatile boolean snapshotStale;
+
     public ScriptlerConfiguration(SortedSet<Script> scripts) {
         if (scripts != null) {
-            this.scriptSet = scripts;
+            setScripts(scripts);
         }
     }
 
-    public synchronized void save() throws IOException {
+    /**
+     * Schedules writing the configuration, changes within a short window are written at once (see
+     * {@link ConfigurationPersister}). Use {@link #flush()} if the changes must be on disk when returning.
+     * <p>
+     * Does not fail if the configuration cannot be written, as that happens later on the writer thread: such failures
+     * are only logged, the caller never learns about them. {@link #flush()} writes on the calling thread and throws them.
+     */
+    public void save() throws IOException {
         if (BulkChange.contains(this))
             return;
-        getXmlFile().write(this);
-        SaveableListener.fireOnChange(this, getXmlFile());
+        PERSISTER.markDirty(this, getXmlFile());
+    }
+
+    /**
+     * Writes pending changes of any configuration right away.
+     */
+    public static void flush() throws IOException {
+        PERSISTER.flush();
     }
 
     public static XmlFile getXmlFile() {
-        return new XmlFile(XSTREAM, new File(ScriptlerManagment.getScriptlerHomeDirectory(), "scriptler.xml"));
+        return getXmlFile(new File(ScriptlerManagment.getScriptlerHomeDirectory(), "scriptler.xml"));
+    }
+
+    static XmlFile getXmlFile(File file) {
+        return new XmlFile(XSTREAM, file);
     }
 
     public static ScriptlerConfiguration load() throws IOException {
-        XmlFile f = getXmlFile();
+        return load(getXmlFile());
+    }
+
+    static ScriptlerConfiguration load(XmlFile f) throws IOException {
+        ReplacingFileWriter.restoreBackup(f.getFile());
         if (f.exists()) {
+            ScriptlerConfiguration sc = (ScriptlerConfiguration) f.read();
+            final ScriptStore store = ScriptStore.forConfigFile(f.getFile(), XSTREAM);
+            if (store.exists()) {
+                final List<String> ids = store.readIndex();
+                final List<Script> scripts = readSnapshot(store, ids);
+                if (scripts != null) {
+                    sc.setLoadedScripts(scripts);
+                } else {
+                    sc.lazy = new LazyScripts(store, ids);
+                    sc.snapshotStale = true;
+                }
+                return sc;
+            }
+
+            // the former layout, all scripts in scriptler.xml: move them to the store
             // As it might be that we have an unsorted set, we ensure the
             // sorting at load time.
-            ScriptlerConfiguration sc = (ScriptlerConfiguration) f.read();
             SortedSet<Script> sorted = new TreeSet<Script>(new ByIdSorter());
             sorted.addAll(sc.getScripts());
             sc.setScripts(sorted);
+            sc.writeScripts(f);
+            f.write(sc);
+            sc.snapshotStale = true;
+            LOGGER.log(Level.INFO, "Moved the metadata of {0} scripts from {1} to {2}", new Object[] { sorted.size(), f, ScriptStore.DIRECTORY });
             return sc;
         } else {
             return null;
         }
     }
 
-    // always retrieve via getter
-    private static transient ScriptlerConfiguration cfg = null;
+    /**
+     * @return the scripts of the binary snapshot sorted by id (as they were written), if it got written for the current
+     *         state of the store - otherwise <code>null</code>
+     */
+    private static List<Script> readSnapshot(ScriptStore store, List<String> ids) throws IOException {
+        final ScriptSnapshotFile snapshot = store.getSnapshotFile();
+        if (!snapshot.exists()) {
+            return null;
+        }
+        return snapshot.read(store.getChecksum(ids));
+    }
 
-    public static ScriptlerConfiguration getConfiguration() {
-        if (cfg == null) {
+    /**
+     * @return are single scripts read from the store as long as not all scripts are needed?
+     */
+    boolean isLoadedLazily() {
+        return lazy != null;
+    }
+
+    /**
+     * As long as not all scripts are loaded, reads only the requested script from the store.
+     */
+    @Override
+    public Script getScriptById(String id) {
+        final LazyScripts current = lazy;
+        if (current == null || id == null) {
+            return super.getScriptById(id);
+        }
+        try {
+            return current.get(id);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load the metadata of the script " + id, e);
+            return null;
+        }
+    }
+
+    @Override
+    protected synchronized Collection<Script> loadScripts() {
+        final LazyScripts current = lazy;
+        if (current == null) {
+            return super.loadScripts();
+        }
+        // unsorted, they get sorted when published
+        final List<Script> scripts = new ArrayList<Script>(current.ids.size());
+        for (String id : current.ids) {
+            Script script = null;
             try {
-                cfg = ScriptlerConfiguration.load();
+                script = current.get(id);
             } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Failed to load scriptler configuration", e);
+                LOGGER.log(Level.SEVERE, "Failed to load the metadata of the script " + id, e);
+            }
+            if (script != null) {
+                scripts.add(script);
+            } else {
+                LOGGER.log(Level.WARNING, "The metadata of the script {0} is missing in {1}", new Object[] { id, ScriptStore.DIRECTORY });
+            }
+        }
+        lazy = null;
+        return scripts;
+    }
+
+    @Override
+    protected synchronized void changed(Collection<String> ids, boolean idsChanged) {
+        if (dirtyIds == null) {
+            dirtyIds = new HashSet<String>();
+        }
+        dirtyIds.addAll(ids);
+        indexDirty |= idsChanged;
+    }
+
+    /**
+     * Writes the metadata of the scripts changed since the last write to the store belonging to the given file.
+     *
+     * @return has anything been written?
+     */
+    boolean writeScripts(XmlFile configFile) throws IOException {
+        final ScriptStore store = ScriptStore.forConfigFile(configFile.getFile(), XSTREAM);
+        final Set<String> ids;
+        final boolean index;
+        final Snapshot current;
+        synchronized (this) {
+            if ((dirtyIds == null || dirtyIds.isEmpty()) && !indexDirty) {
+                return false;
+            }
+            ids = dirtyIds == null ? new HashSet<String>() : new HashSet<String>(dirtyIds);
+            index = indexDirty;
+            dirtyIds = null;
+            indexDirty = false;
+            current = getSnapshot();
+        }
+        try {
+            // the checksum of the store (sizes and mtimes) might not notice a rewrite, so the snapshot is dropped before
+            // the store changes - until the snapshot is written again, the scripts are read from the store
+            store.getSnapshotFile().delete();
+            for (String id : ids) {
+                final Script script = current.getScriptById(id);
+                if (script == null) {
+                    store.delete(id);
+                } else {
+                    store.write(script);
+                }
+            }
+            if (index) {
+                final List<String> allIds = new ArrayList<String>();
+                for (Script script : current.getScripts()) {
+                    allIds.add(script.getId());
+                }
+                store.writeIndex(allIds);
+            }
+        } catch (IOException e) {
+            // retried with the next write
+            changed(ids, index);
+            throw e;
+        } finally {
+            snapshotStale = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return does the binary snapshot of the store have to be written again?
+     */
+    boolean isSnapshotStale() {
+        return snapshotStale;
+    }
+
+    /**
+     * Writes all scripts to the binary snapshot of the store belonging to the given file - unless there are changes which
+     * are not written to the store yet, the snapshot must match the store.
+     *
+     * @return has the snapshot been written?
+     */
+    boolean writeSnapshot(XmlFile configFile) throws IOException {
+        final ScriptStore store = ScriptStore.forConfigFile(configFile.getFile(), XSTREAM);
+        final Snapshot current;
+        synchronized (this) {
+            if ((dirtyIds != null && !dirtyIds.isEmpty()) || indexDirty || !store.exists()) {
+                return false;
+            }
+            current = getSnapshot();
+            snapshotStale = false;
+        }
+        try {
+            final List<String> ids = store.readIndex();
+            store.getSnapshotFile().write(store.getChecksum(ids), current.getScripts());
+        } catch (IOException e) {
+            snapshotStale = true;
+            throw e;
+        }
+        return true;
+    }
+
+    // always retrieve via getter
+    private static transient volatile ScriptlerConfiguration cfg = null;
+
+    public static ScriptlerConfiguration getConfiguration() {
+        ScriptlerConfiguration current = cfg;
+        if (current == null) {
+            synchronized (ScriptlerConfiguration.class) {
+                current = cfg;
+                if (current == null) {
+                    try {
+                        current = ScriptlerConfiguration.load();
+                        cfg = current;
+                    } catch (IOException e) {
+                        LOGGER.log(Level.SEVERE, "Failed to load scriptler configuration", e);
+                    }
+                }
             }
         }
-        return cfg;
+        return current;
     }
 
-    private static final XStream XSTREAM = new XStream2();
+    static final XStream XSTREAM = new XStream2();
+
+    private static final ConfigurationPersister PERSISTER = new ConfigurationPersister(XSTREAM, ConfigurationPersister.WINDOW);
 
     static {
         XSTREAM.alias("scriptler", ScriptlerConfiguration.class);
@@ -139,4 +356,38 @@ public final class ScriptlerConfiguration extends ScriptSet implements Saveable
     public boolean isAllowRunScriptPermission() {
         return allowRunScriptPermission;
     }
+
+    /** the scripts of the store read so far */
+    private static final class LazyScripts {
+        private final ScriptStore store;
+        private final Set<String> ids;
+        private final ConcurrentMap<String, Script> loaded = new ConcurrentHashMap<String, Script>();
+
+        LazyScripts(ScriptStore store, Collection<String> ids) {
+            this.store = store;
+            this.ids = new HashSet<String>(ids);
+        }
+
+        /**
+         * @return the script - <code>null</code> if the store does not contain it
+         */
+        Script get(String id) throws IOException {
+            if (!ids.contains(id)) {
+                return null;
+            }
+            Script script = loaded.get(id);
+            if (script == null) {
+                // read outside of any lock, the builds must not wait for each other
+                script = store.read(id);
+                if (script == null) {
+                    return null;
+                }
+                final Script concurrent = loaded.putIfAbsent(id, script);
+                if (concurrent != null) {
+                    script = concurrent;
+                }
+            }
+            return script;
+        }
+    }
 }
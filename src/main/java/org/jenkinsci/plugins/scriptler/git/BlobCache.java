@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the decoded content of recently read blobs by their object id, so that paging through the revisions of a
+ * script does not inflate the same pack objects again. Blobs never change, so the entries are never outdated. The total
+ * size is limited, the least recently used entries get evicted once the budget is exceeded.
+ */
+class BlobCache {
+
+    private final long maxBytes;
+    private final Map<String, String> entries = new LinkedHashMap<String, String>(16, 0.75f, true);
+    // guarded by entries
+    private long bytes;
+
+    /**
+     * @param maxBytes the maximal size of all cached blobs (a char is counted as two bytes)
+     */
+    BlobCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param id the object id of the blob
+     * @return the content - <code>null</code> if not cached
+     */
+    String get(String id) {
+        synchronized (entries) {
+            return entries.get(id);
+        }
+    }
+
+    void put(String id, String content) {
+        final long weight = weight(content);
+        if (weight > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            final String replaced = entries.put(id, content);
+            if (replaced != null) {
+                bytes -= weight(replaced);
+            }
+            bytes += weight;
+            final Iterator<String> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= weight(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the size of all cached blobs
+     */
+    long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private static long weight(String content) {
+        return 2L * content.length();
+    }
+}
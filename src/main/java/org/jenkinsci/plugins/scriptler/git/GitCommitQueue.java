@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
+
+/**
+ * Commits the scripts changed via the UI in the background, so that saving a script does not wait for git. All changes
+ * within the window end up in a single commit (e.g. a bulk upload), the message lists each file with its author. If the
+ * queue is full, the caller commits the pending changes itself before adding its own.
+ */
+abstract class GitCommitQueue {
+
+    private final static Logger LOGGER = Logger.getLogger(GitCommitQueue.class.getName());
+
+    /** ms to wait for further changes before committing */
+    static final long WINDOW = Long.getLong(GitCommitQueue.class.getName() + ".window", 1000);
+
+    /** max number of changes waiting to be committed */
+    static final int CAPACITY = Integer.getInteger(GitCommitQueue.class.getName() + ".capacity", 1000);
+
+    private static final ScheduledExecutorService COMMITTER = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory(
+            "Scriptler git committer"));
+
+    private final long window;
+    private final BlockingQueue<Change> queue;
+    private final Object commitLock = new Object();
+
+    // guarded by this
+    private ScheduledFuture<?> pending;
+
+    GitCommitQueue(long window, int capacity) {
+        this.window = window;
+        this.queue = new ArrayBlockingQueue<Change>(capacity);
+    }
+
+    /**
+     * Commits the given files with a single commit - each one is added if it exists in the working tree, otherwise
+     * removed. A file added and removed again within the window may never have been added, nothing gets committed for
+     * it.
+     *
+     * @param paths   relative to the root of the repository
+     * @param author  the name of the author
+     * @param message the commit message
+     */
+    protected abstract void commit(Set<String> paths, String author, String message) throws Exception;
+
+    /**
+     * Queues the file to be added with the next commit.
+     */
+    void add(String path, String author) {
+        enqueue(new Change(path, author, false));
+    }
+
+    /**
+     * Queues the file to be removed with the next commit.
+     */
+    void remove(String path, String author) {
+        enqueue(new Change(path, author, true));
+    }
+
+    private void enqueue(Change change) {
+        // back-pressure: the callers have to wait for the commits if the committer does not keep up
+        while (!queue.offer(change)) {
+            commitPending();
+        }
+        schedule();
+    }
+
+    private synchronized void schedule() {
+        if (pending == null) {
+            pending = COMMITTER.schedule(new Runnable() {
+                public void run() {
+                    commitPending();
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commits the pending changes right away, returns after they are committed.
+     */
+    void flush() {
+        commitPending();
+    }
+
+    /**
+     * @return the number of changes waiting to be committed
+     */
+    int size() {
+        return queue.size();
+    }
+
+    private void commitPending() {
+        synchronized (commitLock) {
+            synchronized (this) {
+                // reset before draining, so that changes added after the drain are committed by the next run
+                if (pending != null) {
+                    pending.cancel(false);
+                    pending = null;
+                }
+            }
+            final List<Change> changes = new ArrayList<Change>();
+            queue.drainTo(changes);
+            if (changes.isEmpty()) {
+                return;
+            }
+            final Set<String> paths = new LinkedHashSet<String>();
+            for (Change change : changes) {
+                paths.add(change.path);
+            }
+            try {
+                commit(paths, getAuthor(changes), getMessage(changes));
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "failed to commit " + paths + " into Git repository", e);
+            }
+        }
+    }
+
+    /**
+     * @return the author of the changes, if all have been done by the same one - otherwise <code>Scriptler</code>
+     */
+    static String getAuthor(List<Change> changes) {
+        final String author = changes.get(0).author;
+        for (Change change : changes) {
+            if (!author.equals(change.author)) {
+                return "Scriptler";
+            }
+        }
+        return "Scriptler/" + author;
+    }
+
+    static String getMessage(List<Change> changes) {
+        if (changes.size() == 1) {
+            final Change change = changes.get(0);
+            return (change.remove ? "remove script via WebUI: " : "update script via WebUI: ") + change.path;
+        }
+        // the last change of each file
+        final Map<String, Change> byPath = new LinkedHashMap<String, Change>();
+        for (Change change : changes) {
+            byPath.remove(change.path);
+            byPath.put(change.path, change);
+        }
+        final StringBuilder message = new StringBuilder("update " + byPath.size() + " scripts via WebUI\n");
+        for (Change change : byPath.values()) {
+            message.append('\n').append(change.remove ? "remove " : "update ").append(change.path).append(" (").append(change.author).append(')');
+        }
+        return message.toString();
+    }
+
+    static final class Change {
+        final String path;
+        final String author;
+        final boolean remove;
+
+        Change(String path, String author, boolean remove) {
+            this.path = path;
+            this.author = author;
+            this.remove = remove;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.PackIndex;
+import org.eclipse.jgit.storage.pack.PackWriter;
+
+/**
+ * Repacks the scriptler repository once it needs it: each change via the UI creates loose objects and nothing else
+ * ever packs them. All objects reachable from the refs are written to a single new pack with JGit's {@link PackWriter}
+ * (the JGit version of git-server has no GC of its own). Afterwards
+ * <ul>
+ * <li>the loose objects and the packs contained in the new pack are deleted,</li>
+ * <li>the unreachable loose objects and packs are deleted once they are older than the expiration (two weeks by
+ * default), so that objects of a push still in progress survive.</li>
+ * </ul>
+ * No pack bitmaps are written, this JGit version does not support them.
+ */
+class GitGarbageCollector {
+
+    private final static Logger LOGGER = Logger.getLogger(GitGarbageCollector.class.getName());
+
+    /** min number of loose objects to repack for */
+    static final long LOOSE_OBJECTS = Long.getLong(GitGarbageCollector.class.getName() + ".looseObjects", 1000);
+
+    /** min number of pack files (e.g. one per push) to repack for */
+    static final long PACK_FILES = Long.getLong(GitGarbageCollector.class.getName() + ".packFiles", 50);
+
+    /** ms an unreachable object is kept */
+    static final long EXPIRE = Long.getLong(GitGarbageCollector.class.getName() + ".expire", TimeUnit.DAYS.toMillis(14));
+
+    private final long looseObjects;
+    private final long packFiles;
+    private final long expire;
+
+    GitGarbageCollector(long looseObjects, long packFiles, long expire) {
+        this.looseObjects = looseObjects;
+        this.packFiles = packFiles;
+        this.expire = expire;
+    }
+
+    /**
+     * @param force repack even if the thresholds are not reached
+     * @return the statistics before and after - <code>after</code> is <code>null</code> if the repack was not needed
+     */
+    Result collect(Repository repo, ProgressMonitor monitor, boolean force) throws IOException {
+        final File objects = new File(repo.getDirectory(), "objects");
+        final Statistics before = Statistics.of(objects);
+        if (!force && !isNeeded(before)) {
+            return new Result(before, null);
+        }
+        final Set<ObjectId> want = new HashSet<ObjectId>();
+        for (Ref ref : repo.getAllRefs().values()) {
+            if (ref.getObjectId() != null) {
+                want.add(ref.getObjectId());
+            }
+        }
+        if (want.isEmpty()) {
+            return new Result(before, null);
+        }
+
+        // only the packs and loose objects existing before are candidates for deletion, never the new pack
+        final long expireTime = System.currentTimeMillis() - expire;
+        final File packDir = new File(objects, "pack");
+        final File[] oldPacks = listPacks(packDir);
+        final PackWriter writer = new PackWriter(repo);
+        try {
+            writer.preparePack(monitor, want, new HashSet<ObjectId>());
+            final String name = "pack-" + writer.computeName().name();
+            final File pack = new File(packDir, name + ".pack");
+            final File index = new File(packDir, name + ".idx");
+            if (!pack.exists()) {
+                packDir.mkdirs();
+                final File tmpPack = new File(packDir, name + ".pack_tmp");
+                final File tmpIndex = new File(packDir, name + ".idx_tmp");
+                final OutputStream packOut = new BufferedOutputStream(new FileOutputStream(tmpPack));
+                try {
+                    writer.writePack(monitor, monitor, packOut);
+                } finally {
+                    packOut.close();
+                }
+                final OutputStream indexOut = new BufferedOutputStream(new FileOutputStream(tmpIndex));
+                try {
+                    writer.writeIndex(indexOut);
+                } finally {
+                    indexOut.close();
+                }
+                // the pack must exist before its index, the index announces the pack to the readers
+                rename(tmpPack, pack);
+                rename(tmpIndex, index);
+            }
+            for (File oldPack : oldPacks) {
+                if (!oldPack.equals(pack)) {
+                    deletePackIfRedundant(writer, oldPack, expireTime);
+                }
+            }
+            deleteLooseObjects(writer, objects, expireTime);
+        } finally {
+            writer.release();
+        }
+        return new Result(before, Statistics.of(objects));
+    }
+
+    boolean isNeeded(Statistics statistics) {
+        return statistics.looseObjects >= looseObjects || statistics.packFiles >= packFiles;
+    }
+
+    private static void deletePackIfRedundant(PackWriter writer, File pack, long expireTime) throws IOException {
+        final String base = pack.getName().substring(0, pack.getName().length() - ".pack".length());
+        final File index = new File(pack.getParentFile(), base + ".idx");
+        if (pack.lastModified() >= expireTime && !(index.exists() && containsAll(writer, PackIndex.open(index)))) {
+            // might contain the objects of a push, whose refs are not updated yet
+            return;
+        }
+        // the index first, so that readers no longer see the pack
+        index.delete();
+        if (!pack.delete()) {
+            LOGGER.log(Level.WARNING, "failed to delete {0}", pack);
+        }
+    }
+
+    private static boolean containsAll(PackWriter writer, PackIndex index) throws IOException {
+        for (PackIndex.MutableEntry entry : index) {
+            if (!writer.willInclude(entry.toObjectId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteLooseObjects(PackWriter writer, File objects, long expireTime) throws IOException {
+        final File[] dirs = objects.listFiles();
+        for (File dir : dirs == null ? new File[0] : dirs) {
+            if (!isLooseObjectDirectory(dir)) {
+                continue;
+            }
+            final File[] files = dir.listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                final String id = dir.getName() + file.getName();
+                if (!ObjectId.isId(id)) {
+                    continue;
+                }
+                if (writer.willInclude(ObjectId.fromString(id)) || file.lastModified() < expireTime) {
+                    file.delete();
+                }
+            }
+            // fails as long as the directory is not empty
+            dir.delete();
+        }
+    }
+
+    private static boolean isLooseObjectDirectory(File dir) {
+        return dir.isDirectory() && dir.getName().length() == 2 && Character.digit(dir.getName().charAt(0), 16) >= 0
+                && Character.digit(dir.getName().charAt(1), 16) >= 0;
+    }
+
+    private static File[] listPacks(File packDir) {
+        final File[] packs = packDir.listFiles();
+        if (packs == null) {
+            return new File[0];
+        }
+        final Set<File> result = new HashSet<File>();
+        for (File pack : packs) {
+            if (pack.getName().startsWith("pack-") && pack.getName().endsWith(".pack")) {
+                result.add(pack);
+            }
+        }
+        return result.toArray(new File[result.size()]);
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            from.delete();
+            throw new IOException("Failed to rename " + from + " to " + to);
+        }
+    }
+
+    static final class Result {
+        final Statistics before;
+        final Statistics after;
+
+        Result(Statistics before, Statistics after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        boolean isCollected() {
+            return after != null;
+        }
+
+        @Override
+        public String toString() {
+            return after == null ? "not needed: " + before : "before: " + before + ", after: " + after;
+        }
+    }
+
+    /**
+     * The size of the object database, read from the object directory.
+     */
+    static final class Statistics {
+        final long looseObjects;
+        final long packFiles;
+        final long bytes;
+
+        Statistics(long looseObjects, long packFiles, long bytes) {
+            this.looseObjects = looseObjects;
+            this.packFiles = packFiles;
+            this.bytes = bytes;
+        }
+
+        static Statistics of(File objects) {
+            long looseObjects = 0;
+            long bytes = 0;
+            final File[] dirs = objects.listFiles();
+            for (File dir : dirs == null ? new File[0] : dirs) {
+                if (isLooseObjectDirectory(dir)) {
+                    final File[] files = dir.listFiles();
+                    for (File file : files == null ? new File[0] : files) {
+                        looseObjects++;
+                        bytes += file.length();
+                    }
+                }
+            }
+            final File[] packs = listPacks(new File(objects, "pack"));
+            for (File pack : packs) {
+                bytes += pack.length();
+            }
+            return new Statistics(looseObjects, packs.length, bytes);
+        }
+
+        @Override
+        public String toString() {
+            return looseObjects + " loose objects, " + packFiles + " pack files, " + bytes + " bytes";
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.List;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Collects the garbage of the scriptler git repository in the background, see
+ * {@link GitScriptlerRepository#collectGarbage(java.io.PrintStream, boolean)}.
+ */
+@Extension
+public class GitMaintenance extends AsyncPeriodicWork {
+
+    public GitMaintenance() {
+        super("Scriptler git maintenance");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return HOUR;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        final List<GitScriptlerRepository> repos = Jenkins.getInstance().getExtensionList(GitScriptlerRepository.class);
+        if (repos.isEmpty()) {
+            return;
+        }
+        repos.get(0).collectGarbage(listener.getLogger(), false);
+    }
+}
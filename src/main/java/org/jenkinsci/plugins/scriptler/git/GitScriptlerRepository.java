@@ -5,35 +5,72 @@ package org.jenkinsci.plugins.scriptler.git;
 
 import hudson.Extension;
 import hudson.model.RootAction;
+import hudson.security.ACL;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
 
 import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
 import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.api.errors.NoHeadException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TextProgressMonitor;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
 import org.jenkinsci.main.modules.sshd.SSHD;
 import org.jenkinsci.plugins.gitserver.FileBackedHttpGitRepository;
 import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
 import org.jenkinsci.plugins.scriptler.SyncUtil;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.ScriptHelper;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 /**
  * Exposes Git repository at http://server/jenkins/scriptler.git
+ * <p>
+ * The repository is opened once and shared by all operations and transports (HTTP and SSH), so that the object database
+ * (pack files and their caches) is not opened again on every change of a script. Changes of the working tree, index and
+ * refs are serialized. Scripts changed via the UI are committed in the background, see {@link GitCommitQueue}.
+ * <p>
+ * The log is read page by page (see {@link #getLog(String, String, int)}), the metadata of the commits is cached by
+ * their id - commits never change. The same holds for the content of the scripts in older revisions, which is cached by
+ * the id of the blob.
  * 
  * @author Dominik Bartholdi (imod)
  * 
@@ -47,6 +84,39 @@ public class GitScriptlerRepository extends FileBackedHttpGitRepository implemen
 
     static final String REPOID = "scriptler.git";
 
+    /** number of commits of a log page if not requested otherwise */
+    public static final int LOG_PAGE_SIZE = 20;
+    /** max number of commits of a log page */
+    public static final int MAX_LOG_PAGE_SIZE = 500;
+    /** number of commits whose metadata is cached */
+    public static final int LOG_CACHE_SIZE = Integer.getInteger(GitScriptlerRepository.class.getName() + ".logCacheSize", 1000);
+
+    /** max size of the cached content of older revisions of the scripts, a char counts as two bytes */
+    public static final long BLOB_CACHE_BYTES = Long.getLong(GitScriptlerRepository.class.getName() + ".blobCacheBytes", 8 * 1024 * 1024);
+
+    private final BlobCache blobCache = new BlobCache(BLOB_CACHE_BYTES);
+
+    /** the metadata of the last read commits by their id, access ordered - guarded by itself */
+    private final Map<String, LogInfo> logCache = new LinkedHashMap<String, LogInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LogInfo> eldest) {
+            return size() > LOG_CACHE_SIZE;
+        }
+    };
+
+    /** guarded by this, opened on first use */
+    private Repository repository;
+
+    /** serializes the changes of the repository */
+    private final Object writeLock = new Object();
+
+    private final GitCommitQueue commitQueue = new GitCommitQueue(GitCommitQueue.WINDOW, GitCommitQueue.CAPACITY) {
+        @Override
+        protected void commit(Set<String> paths, String author, String message) throws Exception {
+            commitFiles(paths, author, message);
+        }
+    };
+
     public GitScriptlerRepository() {
         super(ScriptlerManagment.getScriptDirectory());
     }
@@ -80,16 +150,117 @@ public class GitScriptlerRepository extends FileBackedHttpGitRepository implemen
         Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
     }
 
+    /**
+     * @return the shared repository, with a reference the caller releases with {@link Repository#close()} - the
+     *         repository stays open as long as scriptler runs
+     */
+    @Override
+    public Repository openRepository() throws IOException {
+        checkPullPermission();
+        final Repository repo = getSharedRepository();
+        repo.incrementOpen();
+        return repo;
+    }
+
+    /**
+     * For the packs created by {@link GitScriptlerRepositorySSHAccess}, which are never closed by git-server: unlike
+     * {@link #openRepository()} no reference is added.
+     * 
+     * @return the shared repository, must not be closed
+     */
+    Repository getRepositoryForPack() throws IOException {
+        checkPullPermission();
+        return getSharedRepository();
+    }
+
+    /**
+     * @return the shared repository, must not be closed
+     */
+    private synchronized Repository getSharedRepository() throws IOException {
+        if (repository == null) {
+            // creates the repository if it does not exist yet
+            repository = super.openRepository();
+        }
+        return repository;
+    }
+
+    /**
+     * Closes the shared repository, it gets opened again on the next use.
+     */
+    public synchronized void closeRepository() {
+        if (repository != null) {
+            repository.close();
+            repository = null;
+        }
+    }
+
+    /**
+     * Resets the workspace to the pushed state and updates the configuration of the scripts changed by the push - only
+     * if they can't be determined, the whole directory gets synchronized.
+     */
     @Override
     protected void updateWorkspace(Repository repo) throws IOException, GitAPIException {
-        super.updateWorkspace(repo);
+        // the workspace gets reset to the pushed state, which must not drop the changes not committed yet
+        commitQueue.flush();
+        final Set<String> changed;
+        synchronized (writeLock) {
+            changed = getChangedPaths(repo);
+            super.updateWorkspace(repo);
+        }
         final ScriptlerConfiguration cfg = Jenkins.getInstance().getExtensionList(ScriptlerManagment.class).get(0).getConfiguration();
-        SyncUtil.syncDirWithCfg(ScriptlerManagment.getScriptDirectory(), cfg);
+        final File directory = ScriptlerManagment.getScriptDirectory();
+        if (changed == null) {
+            ScriptHelper.invalidateSources();
+            SyncUtil.syncDirWithCfg(directory, cfg);
+        } else {
+            LOGGER.log(Level.FINE, "push changed {0}", changed);
+            for (String path : changed) {
+                ScriptHelper.invalidateSource(new File(directory, path));
+            }
+            SyncUtil.syncFilesWithCfg(directory, cfg, changed);
+        }
         cfg.save();
     }
 
     /**
-     * adds and commits a single file to this git repo
+     * Compares the index, which still describes the workspace before the push, with the pushed <code>HEAD</code>.
+     * 
+     * @return the scripts (files in the repo root dir) added, changed or removed by the push - <code>null</code> if they
+     *         can't be determined
+     */
+    static Set<String> getChangedPaths(Repository repo) {
+        try {
+            final ObjectId head = repo.resolve(Constants.HEAD + "^{tree}");
+            if (head == null) {
+                return null;
+            }
+            final TreeWalk walk = new TreeWalk(repo);
+            try {
+                walk.setRecursive(true);
+                walk.addTree(new DirCacheIterator(repo.readDirCache()));
+                walk.addTree(head);
+                walk.setFilter(TreeFilter.ANY_DIFF);
+                final Set<String> paths = new TreeSet<String>();
+                while (walk.next()) {
+                    final String path = walk.getPathString();
+                    // scripts are only read from the root dir
+                    if (path.indexOf('/') < 0) {
+                        paths.add(path);
+                    }
+                }
+                return paths;
+            } finally {
+                walk.release();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to determine the files changed by the push, synchronizing all scripts", e);
+            return null;
+        }
+    }
+
+    /**
+     * adds a single file to this git repo, it gets committed in the background together with the other changes done
+     * within a short time
      * 
      * @param fileName
      *            must be relative to repo root dir
@@ -97,23 +268,13 @@ public class GitScriptlerRepository extends FileBackedHttpGitRepository implemen
      *             if an exception occurred
      */
     public void addSingleFileToRepo(String fileName) throws Exception {
-        try {
-            Git git = new Git(this.openRepository());
-            AddCommand cmd = git.add();
-            cmd.addFilepattern(fileName);
-            cmd.call();
-
-            CommitCommand co = git.commit();
-            co.setAuthor("Scriptler/" + Jenkins.getAuthentication().getName(), "noreply@jenkins-ci.org");
-            co.setMessage("update script via WebUI: " + fileName);
-            co.call();
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "failed to add/commit " + fileName + " into Git repository", e);
-        }
+        checkPullPermission();
+        commitQueue.add(fileName, Jenkins.getAuthentication().getName());
     }
 
     /**
-     * adds and commits a single file to this git repo
+     * removes a single file from this git repo, it gets committed in the background together with the other changes done
+     * within a short time
      * 
      * @param fileName
      *            must be relative to repo root dir
@@ -121,41 +282,290 @@ public class GitScriptlerRepository extends FileBackedHttpGitRepository implemen
      *             if an exception occurred
      */
     public void rmSingleFileToRepo(String fileName) throws Exception {
+        checkPullPermission();
+        commitQueue.remove(fileName, Jenkins.getAuthentication().getName());
+    }
+
+    /**
+     * Commits the changes waiting in the queue right away.
+     */
+    public void flushCommits() {
+        commitQueue.flush();
+    }
+
+    /**
+     * Commits the given files, each one is added if it exists and removed otherwise. Called by the {@link GitCommitQueue}
+     * on its own thread.
+     */
+    private void commitFiles(Set<String> paths, String author, String message) throws Exception {
+        // the committer thread has no user
+        final SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+        try {
+            final Git git = new Git(getSharedRepository());
+            synchronized (writeLock) {
+                commitFiles(git, ScriptlerManagment.getScriptDirectory(), paths, author, message);
+            }
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+    }
+
+    /**
+     * Adds the given files existing in the directory and removes the others from the index, then commits them. A file
+     * created and deleted again before the commit is not in the index and is skipped, nothing gets committed if the
+     * index does not differ from <code>HEAD</code> in the end.
+     * 
+     * @return has a commit been created?
+     */
+    static boolean commitFiles(Git git, File directory, Set<String> paths, String author, String message) throws Exception {
+        final Repository repo = git.getRepository();
+        final DirCache index = repo.readDirCache();
+        AddCommand add = null;
+        RmCommand rm = null;
+        for (String path : paths) {
+            if (new File(directory, path).exists()) {
+                add = add == null ? git.add() : add;
+                add.addFilepattern(path);
+            } else if (index.findEntry(path) >= 0) {
+                rm = rm == null ? git.rm() : rm;
+                rm.addFilepattern(path);
+            }
+        }
+        if (add != null) {
+            add.call();
+        }
+        if (rm != null) {
+            rm.call();
+        }
+        if (!isIndexChanged(repo)) {
+            LOGGER.log(Level.FINE, "nothing to commit for {0}", paths);
+            return false;
+        }
+
+        CommitCommand co = git.commit();
+        co.setAuthor(author, "noreply@jenkins-ci.org");
+        co.setMessage(message);
+        co.call();
+        return true;
+    }
+
+    /**
+     * @return does the index differ from <code>HEAD</code> (always the case without <code>HEAD</code>)?
+     */
+    private static boolean isIndexChanged(Repository repo) throws IOException {
+        final ObjectId head = repo.resolve(Constants.HEAD + "^{tree}");
+        if (head == null) {
+            return true;
+        }
+        final TreeWalk walk = new TreeWalk(repo);
         try {
-            Git git = new Git(this.openRepository());
-            RmCommand cmd = git.rm();
-            cmd.addFilepattern(fileName);
-            cmd.call();
+            walk.setRecursive(true);
+            walk.addTree(new DirCacheIterator(repo.readDirCache()));
+            walk.addTree(head);
+            walk.setFilter(TreeFilter.ANY_DIFF);
+            return walk.next();
+        } finally {
+            walk.release();
+        }
+    }
 
-            CommitCommand co = git.commit();
-            co.setAuthor("Scriptler/" + Jenkins.getAuthentication().getName(), "noreply@jenkins-ci.org");
-            co.setMessage("remove script via WebUI: " + fileName);
-            co.call();
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "failed to remove " + fileName + " from Git repository", e);
+    /**
+     * Packs the objects of the repository and prunes the unreachable ones, if there are enough loose objects or pack
+     * files (see {@link GitGarbageCollector}). Not protected by a permission, the caller is the periodic maintenance.
+     * 
+     * @param log
+     *            receives the progress and the size of the repository before and after
+     * @param force
+     *            repack even if the thresholds are not reached
+     * @return has the repository been repacked?
+     */
+    public boolean collectGarbage(PrintStream log, boolean force) throws IOException {
+        // the commits of the queue would otherwise be left as loose objects
+        commitQueue.flush();
+        final GitGarbageCollector.Result result;
+        synchronized (writeLock) {
+            result = new GitGarbageCollector(GitGarbageCollector.LOOSE_OBJECTS, GitGarbageCollector.PACK_FILES, GitGarbageCollector.EXPIRE).collect(
+                    getSharedRepository(), new TextProgressMonitor(new PrintWriter(log)), force);
         }
+        log.println(REPOID + " GC " + result);
+        LOGGER.log(result.isCollected() ? Level.INFO : Level.FINE, "{0} GC {1}", new Object[] { REPOID, result });
+        return result.isCollected();
     }
 
     public String hardReset() throws IOException {
-        final Repository repo = this.openRepository();
+        checkPullPermission();
+        // the pending changes would be lost otherwise
+        commitQueue.flush();
+        final Repository repo = getSharedRepository();
         final Git git = new Git(repo);
-        if (repo.getRepositoryState().canResetHead()) {
-            return git.reset().setMode(ResetType.HARD).setRef("master").call().getObjectId().name();
+        synchronized (writeLock) {
+            if (repo.getRepositoryState().canResetHead()) {
+                try {
+                    return git.reset().setMode(ResetType.HARD).setRef("master").call().getObjectId().name();
+                } finally {
+                    // any script might have been reset
+                    ScriptHelper.invalidateSources();
+                }
+            }
         }
         return "";
     }
 
+    /**
+     * @return the first page of the log
+     */
     public Collection<LogInfo> getLog() throws IOException {
-        Collection<LogInfo> msgs = new ArrayList<LogInfo>();
+        return getLog(null, null, LOG_PAGE_SIZE).getEntries();
+    }
+
+    /**
+     * Reads a page of the log, newest commits first.
+     * 
+     * @param path
+     *            only the commits changing this file (relative to the repo root dir) - <code>null</code> for all commits
+     * @param start
+     *            the id of the first commit of the page, see {@link LogPage#getNext()} - <code>null</code> to start at
+     *            <code>HEAD</code>
+     * @param limit
+     *            max number of commits of the page
+     */
+    public LogPage getLog(String path, String start, int limit) throws IOException {
+        checkPullPermission();
+        final Repository repo = getSharedRepository();
+        final List<LogInfo> entries = new ArrayList<LogInfo>();
+        final ObjectId from;
+        if (StringUtils.isBlank(start)) {
+            from = repo.resolve(Constants.HEAD);
+        } else if (ObjectId.isId(start)) {
+            from = ObjectId.fromString(start);
+        } else {
+            throw new IOException("not a commit id: " + start);
+        }
+        if (from == null) {
+            // nothing committed yet
+            return new LogPage(entries, null);
+        }
+
+        final RevWalk walk = new RevWalk(repo);
+        try {
+            // the bodies are only read for the commits not cached yet
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(from));
+            if (StringUtils.isNotBlank(path)) {
+                walk.setTreeFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(Collections.singleton(path)), TreeFilter.ANY_DIFF));
+            }
+            for (RevCommit c : walk) {
+                if (entries.size() == limit) {
+                    return new LogPage(entries, c.getName());
+                }
+                entries.add(getLogInfo(walk, c));
+            }
+        } finally {
+            walk.release();
+        }
+        return new LogPage(entries, null);
+    }
+
+    private LogInfo getLogInfo(RevWalk walk, RevCommit c) throws IOException {
+        LogInfo info;
+        synchronized (logCache) {
+            info = logCache.get(c.getName());
+        }
+        if (info == null) {
+            walk.parseBody(c);
+            // the commit time is in seconds
+            info = new LogInfo(c.getName(), c.getAuthorIdent().getName(), c.getCommitterIdent().getName(), new Date(c.getCommitTime() * 1000L),
+                    c.getFullMessage());
+            synchronized (logCache) {
+                logCache.put(info.name, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Reads the content of a file in a given revision.
+     * 
+     * @param revision
+     *            a commit id or any other revision understood by git, e.g. <code>HEAD</code> or <code>&lt;id&gt;^</code>
+     * @param path
+     *            the file, relative to the repo root dir
+     * @return the content - <code>null</code> if the revision or the file in it does not exist
+     */
+    public String getContent(String revision, String path) throws IOException {
+        checkPullPermission();
+        final Repository repo = getSharedRepository();
+        final ObjectId commitId = repo.resolve(revision);
+        if (commitId == null) {
+            return null;
+        }
+        final RevWalk walk = new RevWalk(repo);
         try {
-            // TODO find a way to limit the number of log entries - e.g. ..log().addRange(...).call()
-            for (RevCommit c : new Git(this.openRepository()).log().call()) {
-                msgs.add(new LogInfo(c.getName(), c.getAuthorIdent().getName(), c.getCommitterIdent().getName(), new Date(c.getCommitTime()), c.getFullMessage()));
+            final TreeWalk tree = TreeWalk.forPath(repo, path, walk.parseCommit(commitId).getTree());
+            if (tree == null) {
+                return null;
+            }
+            final ObjectId blobId;
+            try {
+                blobId = tree.getObjectId(0);
+            } finally {
+                tree.release();
             }
-        } catch (NoHeadException e) {
-            throw new IOException("not able to retrieve git log", e);
+            String content = blobCache.get(blobId.getName());
+            if (content == null) {
+                // UTF-8 like the diff (see ScriptDiff), falls back to ISO-8859-1 for invalid sequences
+                content = RawParseUtils.decode(repo.open(blobId, Constants.OBJ_BLOB).getBytes());
+                blobCache.put(blobId.getName(), content);
+            }
+            return content;
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * A page of the log as JSON, e.g. <code>/scriptler.git/log?path=my.groovy&amp;limit=20</code>. The next page starts
+     * at the commit given by <code>next</code>: <code>/scriptler.git/log?path=my.groovy&amp;start=&lt;next&gt;</code>.
+     */
+    public void doLog(StaplerRequest req, StaplerResponse rsp, @QueryParameter("path") String path, @QueryParameter("start") String start,
+            @QueryParameter("limit") int limit) throws IOException {
+        final LogPage page = getLog(path, start, limit > 0 ? Math.min(limit, MAX_LOG_PAGE_SIZE) : LOG_PAGE_SIZE);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(page.toJSON().toString());
+    }
+
+    public static class LogPage {
+        private final List<LogInfo> entries;
+        private final String next;
+
+        public LogPage(List<LogInfo> entries, String next) {
+            this.entries = entries;
+            this.next = next;
+        }
+
+        public List<LogInfo> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the id of the first commit of the next page - <code>null</code> if this is the last page
+         */
+        public String getNext() {
+            return next;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            JSONArray array = new JSONArray();
+            for (LogInfo entry : entries) {
+                array.add(entry.toJSON());
+            }
+            json.put("entries", array);
+            if (next != null) {
+                json.put("next", next);
+            }
+            return json;
         }
-        return msgs;
     }
 
     public static class LogInfo {
@@ -169,5 +579,15 @@ public class GitScriptlerRepository extends FileBackedHttpGitRepository implemen
             this.committime = committime;
             this.msg = msg;
         }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("author", author);
+            json.put("commiter", commiter);
+            json.put("committime", committime.getTime());
+            json.put("msg", msg);
+            return json;
+        }
     }
 }
@@ -31,7 +31,7 @@ public class GitScriptlerRepositorySSHAccess extends RepositoryResolver {
     @Override
     public ReceivePack createReceivePack(String fullRepositoryName) throws IOException, InterruptedException {
         if (isMine(fullRepositoryName))
-            return repo.createReceivePack(repo.openRepository());
+            return repo.createReceivePack(repo.getRepositoryForPack());
         return null;
     }
 
@@ -41,7 +41,7 @@ public class GitScriptlerRepositorySSHAccess extends RepositoryResolver {
     @Override
     public UploadPack createUploadPack(String fullRepositoryName) throws IOException, InterruptedException {
         if (isMine(fullRepositoryName))
-            return new UploadPack(repo.openRepository());
+            return new UploadPack(repo.getRepositoryForPack());
         return null;
     }
 
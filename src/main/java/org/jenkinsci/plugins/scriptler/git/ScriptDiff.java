@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+/**
+ * A side by side diff of two versions of a script: one row per line, changed lines of both versions next to each other.
+ */
+public class ScriptDiff {
+
+    public enum Type {
+        EQUAL, DELETE, INSERT, REPLACE
+    }
+
+    private ScriptDiff() {
+    }
+
+    /**
+     * @return the rows of the diff, all lines of both versions in their order
+     */
+    public static List<Row> compute(String oldContent, String newContent) {
+        final RawText a = toRawText(oldContent);
+        final RawText b = toRawText(newContent);
+        final EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, a, b);
+
+        final List<Row> rows = new ArrayList<Row>(Math.max(a.size(), b.size()));
+        int i = 0;
+        int j = 0;
+        for (Edit edit : edits) {
+            for (; i < edit.getBeginA(); i++, j++) {
+                rows.add(new Row(Type.EQUAL, i + 1, a.getString(i), j + 1, b.getString(j)));
+            }
+            final int lengthA = edit.getLengthA();
+            final int lengthB = edit.getLengthB();
+            for (int k = 0; k < Math.max(lengthA, lengthB); k++) {
+                final boolean left = k < lengthA;
+                final boolean right = k < lengthB;
+                final Type type = left && right ? Type.REPLACE : left ? Type.DELETE : Type.INSERT;
+                rows.add(new Row(type, left ? i + k + 1 : 0, left ? a.getString(i + k) : null, right ? j + k + 1 : 0, right ? b.getString(j + k)
+                        : null));
+            }
+            i = edit.getEndA();
+            j = edit.getEndB();
+        }
+        for (; i < a.size(); i++, j++) {
+            rows.add(new Row(Type.EQUAL, i + 1, a.getString(i), j + 1, b.getString(j)));
+        }
+        return rows;
+    }
+
+    private static RawText toRawText(String content) {
+        try {
+            return new RawText(content.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public static class Row {
+        public final Type type;
+        /** 1 based, <code>0</code> if the old version has no line in this row */
+        public final int oldLine;
+        public final String oldText;
+        /** 1 based, <code>0</code> if the new version has no line in this row */
+        public final int newLine;
+        public final String newText;
+
+        public Row(Type type, int oldLine, String oldText, int newLine, String newText) {
+            this.type = type;
+            this.oldLine = oldLine;
+            this.oldText = oldText;
+            this.newLine = newLine;
+            this.newText = newText;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.scriptler.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the first bytes written to it, everything beyond the limit gets dropped and is marked at the end of the output.
+ */
+public class CompressedOutput extends OutputStream {
+
+    /** max number of (uncompressed) bytes of output kept per node */
+    public static final int MAX_OUTPUT = Integer.getInteger(CompressedOutput.class.getName() + ".maxOutput", 1024 * 1024);
+
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final GZIPOutputStream gzip;
+    private final long limit;
+    private long written;
+    private long dropped;
+
+    /**
+     * @param limit max number of bytes to keep, <code>0</code> keeps everything
+     */
+    public CompressedOutput(long limit) {
+        this.limit = limit;
+        try {
+            this.gzip = new GZIPOutputStream(compressed);
+        } catch (IOException e) {
+            // does not happen writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int accepted = len;
+        if (limit > 0 && written + len > limit) {
+            accepted = (int) Math.max(0, limit - written);
+            dropped += len - accepted;
+        }
+        if (accepted > 0) {
+            gzip.write(b, off, accepted);
+            written += accepted;
+        }
+    }
+
+    /**
+     * Finishes the compression, nothing can be written afterwards.
+     *
+     * @return the gzipped output
+     */
+    public byte[] toByteArray() throws IOException {
+        if (dropped > 0) {
+            gzip.write(("\n... [history output truncated, " + dropped + " bytes dropped]\n").getBytes());
+            dropped = 0;
+        }
+        gzip.finish();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compresses the given output.
+     */
+    public static byte[] compress(byte[] output) throws IOException {
+        CompressedOutput out = new CompressedOutput(MAX_OUTPUT);
+        out.write(output);
+        return out.toByteArray();
+    }
+}
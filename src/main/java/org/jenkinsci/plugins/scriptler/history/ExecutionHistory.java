@@ -0,0 +1,595 @@
+package org.jenkinsci.plugins.scriptler.history;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Hudson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+
+import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Append-only store of the script executions.
+ * <p>
+ * The records are appended to segment files (<code>&lt;id&gt;.seg</code>), each record prefixed by its length. The id of
+ * a segment is the time it was started, so the segments are ordered by time and looking up a time range only reads the
+ * segments covering it. Once a segment exceeds {@link #SEGMENT_SIZE} a new one is started. For each script an index file
+ * (<code>index/&lt;script id&gt;.idx</code>) holds fixed size entries (time, segment, offset) of its records, the last
+ * runs of a script are read from the tail of its index without scanning the segments.
+ * <p>
+ * Old records are removed by {@link #compact()} (see {@link ExecutionHistoryCompaction}), which rewrites the segments
+ * no longer appended to and rebuilds the index. If the segment appended to contains expired records, it is sealed first:
+ * the next append starts a new segment.
+ */
+@Extension
+public class ExecutionHistory {
+
+    private final static Logger LOGGER = Logger.getLogger(ExecutionHistory.class.getName());
+
+    /** number of records kept per script, <code>0</code> keeps all */
+    public static final int MAX_RECORDS_PER_SCRIPT = Integer.getInteger(ExecutionHistory.class.getName() + ".maxRecordsPerScript", 100);
+
+    /** number of days a record is kept, <code>0</code> keeps the records forever */
+    public static final int MAX_AGE_DAYS = Integer.getInteger(ExecutionHistory.class.getName() + ".maxAgeDays", 30);
+
+    /** size in bytes after which a new segment is started */
+    public static final long SEGMENT_SIZE = Long.getLong(ExecutionHistory.class.getName() + ".segmentSize", 4 * 1024 * 1024);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    /** time, segment and offset - three longs */
+    private static final int INDEX_ENTRY_SIZE = 24;
+    /** records are appended in the order they are written, their time might slightly differ from this order */
+    private static final long TIME_SLACK = TimeUnit.MINUTES.toMillis(1);
+
+    private final File directory;
+    private final File indexDirectory;
+    private final long segmentSize;
+    /** appends and the swapping of compacted segments are exclusive, reads are shared */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    /** the latest segment sealed by the compaction, no longer appended to - guarded by the write lock */
+    private long sealedSegment = Long.MIN_VALUE;
+
+    public ExecutionHistory() {
+        this(new File(ScriptlerManagment.getScriptlerHomeDirectory(), "history"));
+    }
+
+    public ExecutionHistory(File directory) {
+        this(directory, SEGMENT_SIZE);
+    }
+
+    ExecutionHistory(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexDirectory = new File(directory, "index");
+        directory.mkdirs();
+        try {
+            recover();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "failed to recover the execution history at " + directory, e);
+        }
+    }
+
+    public static ExecutionHistory get() {
+        return Jenkins.getInstance().getExtensionList(ExecutionHistory.class).get(0);
+    }
+
+    /**
+     * Appends the record to the history.
+     */
+    public void append(ExecutionRecord record) throws IOException {
+        final byte[] bytes = record.toBytes();
+        lock.writeLock().lock();
+        try {
+            final long segment = getActiveSegment(record.getTime());
+            final File file = segmentFile(segment);
+            final long offset = file.length();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            try {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(record.getScriptId()), true)));
+            try {
+                writeIndexEntry(index, record.getTime(), segment, offset);
+            } finally {
+                index.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the last executions of a script, read via the index of the script.
+     *
+     * @param scriptId the id of the script
+     * @param limit    max number of records to return
+     * @return the records, the latest first
+     */
+    public List<ExecutionRecord> getRecords(String scriptId, int limit) throws IOException {
+        return getRecords(scriptId, limit, null);
+    }
+
+    /**
+     * @param filter only the records accepted count towards the limit - <code>null</code> accepts all
+     * @see #getRecords(String, int)
+     */
+    List<ExecutionRecord> getRecords(String scriptId, int limit, RecordFilter filter) throws IOException {
+        lock.readLock().lock();
+        try {
+            final File indexFile = indexFile(scriptId);
+            if (!indexFile.exists() || limit <= 0) {
+                return Collections.emptyList();
+            }
+            final List<ExecutionRecord> records = new ArrayList<ExecutionRecord>();
+            final Map<Long, RandomAccessFile> segments = new HashMap<Long, RandomAccessFile>();
+            RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+            try {
+                final long entries = index.length() / INDEX_ENTRY_SIZE;
+                for (long i = entries - 1; i >= 0 && records.size() < limit; i--) {
+                    index.seek(i * INDEX_ENTRY_SIZE);
+                    index.readLong();
+                    final long segment = index.readLong();
+                    final long offset = index.readLong();
+                    RandomAccessFile segmentFile = segments.get(segment);
+                    if (segmentFile == null) {
+                        segmentFile = new RandomAccessFile(segmentFile(segment), "r");
+                        segments.put(segment, segmentFile);
+                    }
+                    segmentFile.seek(offset);
+                    final byte[] bytes = new byte[segmentFile.readInt()];
+                    segmentFile.readFully(bytes);
+                    final ExecutionRecord record = ExecutionRecord.fromBytes(bytes);
+                    if (filter == null || filter.accept(record)) {
+                        records.add(record);
+                    }
+                }
+            } finally {
+                index.close();
+                for (RandomAccessFile segmentFile : segments.values()) {
+                    segmentFile.close();
+                }
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the executions of all scripts which finished within the given time range, only the segments covering the
+     * range are read.
+     *
+     * @param from  the earliest time (inclusive)
+     * @param to    the latest time (inclusive)
+     * @param limit max number of records to return
+     * @return the records, the latest first
+     */
+    public List<ExecutionRecord> getRecords(long from, long to, int limit) throws IOException {
+        return getRecords(from, to, limit, null);
+    }
+
+    /**
+     * @param filter only the records accepted count towards the limit - <code>null</code> accepts all
+     * @see #getRecords(long, long, int)
+     */
+    List<ExecutionRecord> getRecords(final long from, final long to, final int limit, final RecordFilter filter) throws IOException {
+        lock.readLock().lock();
+        try {
+            final List<ExecutionRecord> records = new ArrayList<ExecutionRecord>();
+            final long[] segments = listSegments();
+            for (int i = segments.length - 1; i >= 0 && records.size() < limit; i--) {
+                if (segments[i] > to + TIME_SLACK) {
+                    continue;
+                }
+                if (i + 1 < segments.length && segments[i + 1] < from - TIME_SLACK) {
+                    // all the records of this and the older segments are before the range
+                    break;
+                }
+                final List<ExecutionRecord> matching = new ArrayList<ExecutionRecord>();
+                scanSegment(segments[i], new RecordVisitor() {
+                    public void visit(long offset, long time, String scriptId, byte[] record) throws IOException {
+                        if (time >= from && time <= to) {
+                            final ExecutionRecord executionRecord = ExecutionRecord.fromBytes(record);
+                            if (filter == null || filter.accept(executionRecord)) {
+                                matching.add(executionRecord);
+                            }
+                        }
+                    }
+                });
+                Collections.reverse(matching);
+                records.addAll(matching.subList(0, Math.min(matching.size(), limit - records.size())));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the records exceeding {@link #MAX_RECORDS_PER_SCRIPT} or {@link #MAX_AGE_DAYS}. Only the segments no
+     * longer appended to are compacted (the active one gets sealed if it contains expired records), they are rewritten
+     * without blocking the appends - only swapping the compacted segments and rebuilding the index is exclusive.
+     */
+    public void compact() throws IOException {
+        compact(MAX_RECORDS_PER_SCRIPT, MAX_AGE_DAYS > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS) : Long.MIN_VALUE);
+    }
+
+    /**
+     * @param maxRecordsPerScript number of records kept per script, <code>0</code> keeps all
+     * @param cutoff              records before this time are removed
+     */
+    void compact(int maxRecordsPerScript, long cutoff) throws IOException {
+        synchronized (compactionLock) {
+            final Set<String> expired = new HashSet<String>();
+            final Set<Long> expiredSegments = new HashSet<Long>();
+            final long[] segments;
+            lock.readLock().lock();
+            try {
+                segments = listSegments();
+                final File[] indexFiles = indexDirectory.listFiles();
+                for (File indexFile : indexFiles == null ? new File[0] : indexFiles) {
+                    collectExpired(indexFile, maxRecordsPerScript, cutoff, expired, expiredSegments);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (expired.isEmpty() || segments.length == 0) {
+                return;
+            }
+
+            final long active = segments[segments.length - 1];
+            if (expiredSegments.contains(active)) {
+                // on a quiet install the active segment might hold all records, stop appending to it
+                lock.writeLock().lock();
+                try {
+                    sealedSegment = Math.max(sealedSegment, active);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            final Map<Long, File> compacted = new LinkedHashMap<Long, File>();
+            for (long segment : segments) {
+                if (!expiredSegments.contains(segment)) {
+                    continue;
+                }
+                final File compactedFile = compactSegment(segment, expired);
+                if (compactedFile != null) {
+                    compacted.put(segment, compactedFile);
+                }
+            }
+            if (compacted.isEmpty()) {
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<Long, File> entry : compacted.entrySet()) {
+                    final File segmentFile = segmentFile(entry.getKey());
+                    final File compactedFile = entry.getValue();
+                    segmentFile.delete();
+                    if (compactedFile.length() == 0) {
+                        compactedFile.delete();
+                    } else if (!compactedFile.renameTo(segmentFile)) {
+                        throw new IOException("failed to replace " + segmentFile + " by " + compactedFile);
+                    }
+                }
+                rebuildIndex();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            LOGGER.log(Level.FINE, "compacted {0} history segments, removed {1} records", new Object[] { compacted.size(), expired.size() });
+        }
+    }
+
+    private void collectExpired(File indexFile, int maxRecordsPerScript, long cutoff, Set<String> expired, Set<Long> expiredSegments) throws IOException {
+        DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            final long entries = indexFile.length() / INDEX_ENTRY_SIZE;
+            for (long i = 0; i < entries; i++) {
+                final long time = index.readLong();
+                final long segment = index.readLong();
+                final long offset = index.readLong();
+                if ((maxRecordsPerScript > 0 && i < entries - maxRecordsPerScript) || time < cutoff) {
+                    expired.add(segment + ":" + offset);
+                    expiredSegments.add(segment);
+                }
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Writes the records of the segment which are not expired to a new file.
+     *
+     * @return the new file - <code>null</code> if no record of the segment is expired
+     */
+    private File compactSegment(final long segment, final Set<String> expired) throws IOException {
+        final File compactedFile = new File(directory, segment + ".compact");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactedFile)));
+        final boolean[] removed = new boolean[1];
+        try {
+            scanSegment(segment, new RecordVisitor() {
+                public void visit(long offset, long time, String scriptId, byte[] record) throws IOException {
+                    if (expired.contains(segment + ":" + offset)) {
+                        removed[0] = true;
+                    } else {
+                        out.writeInt(record.length);
+                        out.write(record);
+                    }
+                }
+            });
+        } finally {
+            out.close();
+        }
+        if (!removed[0]) {
+            compactedFile.delete();
+            return null;
+        }
+        return compactedFile;
+    }
+
+    /**
+     * Truncates a partially written record at the end of the last segment (e.g. after a crash) and rebuilds the index if
+     * it is missing or might be incomplete.
+     */
+    private void recover() throws IOException {
+        final long[] segments = listSegments();
+        boolean rebuild = !indexDirectory.exists();
+        if (segments.length > 0) {
+            final long segment = segments[segments.length - 1];
+            final long valid = scanSegment(segment, null);
+            final File segmentFile = segmentFile(segment);
+            if (valid < segmentFile.length()) {
+                LOGGER.log(Level.WARNING, "truncating the incomplete record at the end of {0}", segmentFile);
+                RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw");
+                try {
+                    raf.setLength(valid);
+                } finally {
+                    raf.close();
+                }
+                rebuild = true;
+            }
+        }
+        // leftovers of an interrupted compaction
+        final File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.getName().endsWith(".compact")) {
+                file.delete();
+            }
+        }
+        if (rebuild) {
+            rebuildIndex();
+        }
+    }
+
+    private void rebuildIndex() throws IOException {
+        final Map<String, ByteArrayOutputStream> entries = new HashMap<String, ByteArrayOutputStream>();
+        for (final long segment : listSegments()) {
+            scanSegment(segment, new RecordVisitor() {
+                public void visit(long offset, long time, String scriptId, byte[] record) throws IOException {
+                    ByteArrayOutputStream scriptEntries = entries.get(scriptId);
+                    if (scriptEntries == null) {
+                        scriptEntries = new ByteArrayOutputStream();
+                        entries.put(scriptId, scriptEntries);
+                    }
+                    writeIndexEntry(new DataOutputStream(scriptEntries), time, segment, offset);
+                }
+            });
+        }
+        indexDirectory.mkdirs();
+        final File[] indexFiles = indexDirectory.listFiles();
+        for (File indexFile : indexFiles == null ? new File[0] : indexFiles) {
+            indexFile.delete();
+        }
+        for (Map.Entry<String, ByteArrayOutputStream> entry : entries.entrySet()) {
+            FileOutputStream out = new FileOutputStream(indexFile(entry.getKey()));
+            try {
+                entry.getValue().writeTo(out);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads all records of a segment.
+     *
+     * @param visitor receives the records, might be <code>null</code> to only validate the segment
+     * @return the end of the last complete record
+     */
+    private long scanSegment(long segment, RecordVisitor visitor) throws IOException {
+        final long[] time = new long[1];
+        long offset = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment))));
+        try {
+            while (true) {
+                final byte[] record;
+                try {
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    return offset;
+                }
+                if (visitor != null) {
+                    final String scriptId = ExecutionRecord.readHeader(record, time);
+                    visitor.visit(offset, time[0], scriptId, record);
+                }
+                offset += 4 + record.length;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the segment to append a record with the given time to
+     */
+    private long getActiveSegment(long time) {
+        final long[] segments = listSegments();
+        if (segments.length == 0) {
+            return time;
+        }
+        final long last = segments[segments.length - 1];
+        if (last > sealedSegment && segmentFile(last).length() < segmentSize) {
+            return last;
+        }
+        return Math.max(time, last + 1);
+    }
+
+    /**
+     * @return the ids of all segments, the oldest first
+     */
+    private long[] listSegments() {
+        final String[] names = directory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] segments = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments[count] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    count++;
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "ignoring unexpected file {0} in the history", name);
+                }
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, segment + SEGMENT_SUFFIX);
+    }
+
+    private File indexFile(String scriptId) {
+        return new File(indexDirectory, Util.rawEncode(scriptId) + INDEX_SUFFIX);
+    }
+
+    private static void writeIndexEntry(DataOutputStream out, long time, long segment, long offset) throws IOException {
+        out.writeLong(time);
+        out.writeLong(segment);
+        out.writeLong(offset);
+    }
+
+    /**
+     * The last executions of a script as JSON, e.g. <code>/scriptler/history/script?id=my.groovy&amp;limit=10</code>.
+     * Only administrators see all records, see {@link #getVisibleRecords()}.
+     */
+    public void doScript(StaplerRequest req, StaplerResponse rsp, @QueryParameter("id") String id,
+                         @QueryParameter("limit") int limit, @QueryParameter("output") boolean output) throws IOException {
+        checkPermission();
+        writeJSON(rsp, getRecords(id, limit > 0 ? limit : 20, getVisibleRecords()), output);
+    }
+
+    /**
+     * The executions of all scripts within a time range as JSON, e.g.
+     * <code>/scriptler/history/recent?from=1370000000000&amp;limit=10</code>.
+     */
+    public void doRecent(StaplerRequest req, StaplerResponse rsp, @QueryParameter("from") long from, @QueryParameter("to") long to,
+                         @QueryParameter("limit") int limit, @QueryParameter("output") boolean output) throws IOException {
+        checkPermission();
+        writeJSON(rsp, getRecords(from, to > 0 ? to : Long.MAX_VALUE - TIME_SLACK, limit > 0 ? limit : 20, getVisibleRecords()), output);
+    }
+
+    private void writeJSON(StaplerResponse rsp, List<ExecutionRecord> records, boolean withOutput) throws IOException {
+        JSONArray json = new JSONArray();
+        for (ExecutionRecord record : records) {
+            json.add(record.toJSON(withOutput));
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(json.toString());
+    }
+
+    private void checkPermission() {
+        final ScriptlerManagment scriptler = Jenkins.getInstance().getExtensionList(ScriptlerManagment.class).get(0);
+        Hudson.getInstance().checkPermission(scriptler.getRequiredPermissionForRunScript());
+    }
+
+    /**
+     * The records contain the parameters and the output of the runs, which might be secrets: users who are not
+     * administrators only see their own runs of the scripts they may run themselves.
+     *
+     * @return the filter for the current user - <code>null</code> for administrators
+     */
+    private static RecordFilter getVisibleRecords() {
+        if (Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER)) {
+            return null;
+        }
+        return new UserRecordFilter(Jenkins.getAuthentication().getName(), ScriptlerConfiguration.getConfiguration());
+    }
+
+    /**
+     * Decides which records are returned.
+     */
+    interface RecordFilter {
+        boolean accept(ExecutionRecord record);
+    }
+
+    /**
+     * Accepts the runs of the given user of the scripts which can be run without being administrator.
+     */
+    static final class UserRecordFilter implements RecordFilter {
+        private final String user;
+        private final ScriptlerConfiguration cfg;
+
+        UserRecordFilter(String user, ScriptlerConfiguration cfg) {
+            this.user = user;
+            this.cfg = cfg;
+        }
+
+        public boolean accept(ExecutionRecord record) {
+            if (!user.equals(record.getUser())) {
+                return false;
+            }
+            final Script script = cfg == null ? null : cfg.getScriptById(record.getScriptId());
+            return script != null && script.nonAdministerUsing;
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(long offset, long time, String scriptId, byte[] record) throws IOException;
+    }
+}
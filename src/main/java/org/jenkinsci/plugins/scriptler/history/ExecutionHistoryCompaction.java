@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.scriptler.history;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+
+/**
+ * Applies the retention of the {@link ExecutionHistory} in the background.
+ */
+@Extension
+public class ExecutionHistoryCompaction extends AsyncPeriodicWork {
+
+    public ExecutionHistoryCompaction() {
+        super("Scriptler execution history compaction");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return HOUR;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        ExecutionHistory.get().compact();
+    }
+}
@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.scriptler.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.scriptler.config.Parameter;
+
+/**
+ * A single execution of a script kept in the {@link ExecutionHistory}.
+ */
+public class ExecutionRecord {
+
+    /** bumped whenever the binary format of a record changes */
+    static final int VERSION = 1;
+
+    public enum Status {
+        SUCCESS, FAILURE, CANCELLED
+    }
+
+    /** when the execution finished, the history is ordered by this time */
+    private final long time;
+    private final String scriptId;
+    private final String runId;
+    private final String sourceHash;
+    private final String user;
+    private final Parameter[] parameters;
+    private final List<NodeResult> nodes;
+
+    public ExecutionRecord(long time, String scriptId, String runId, String sourceHash, String user, Parameter[] parameters, List<NodeResult> nodes) {
+        this.time = time;
+        this.scriptId = scriptId;
+        this.runId = runId;
+        this.sourceHash = sourceHash;
+        this.user = user;
+        this.parameters = parameters == null ? new Parameter[0] : parameters;
+        this.nodes = Collections.unmodifiableList(new ArrayList<NodeResult>(nodes));
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getScriptId() {
+        return scriptId;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public Parameter[] getParameters() {
+        return parameters.clone();
+    }
+
+    public List<NodeResult> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param withOutput should the (uncompressed) output of the nodes be included?
+     */
+    public JSONObject toJSON(boolean withOutput) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("time", time);
+        json.put("script", scriptId);
+        json.put("run", runId);
+        json.put("sourceHash", sourceHash);
+        json.put("user", user);
+        JSONObject params = new JSONObject();
+        for (Parameter parameter : parameters) {
+            params.put(parameter.getName(), parameter.getValue());
+        }
+        json.put("parameters", params);
+        JSONArray nodeResults = new JSONArray();
+        for (NodeResult node : nodes) {
+            JSONObject nodeResult = new JSONObject();
+            nodeResult.put("node", node.getNode());
+            nodeResult.put("duration", node.getDuration());
+            nodeResult.put("status", node.getStatus().name());
+            if (withOutput) {
+                nodeResult.put("output", node.getOutput());
+            }
+            nodeResults.add(nodeResult);
+        }
+        json.put("nodes", nodeResults);
+        return json;
+    }
+
+    /**
+     * Writes the record, the time and the script id always come first so that the index can be rebuilt by only
+     * reading the head of the records (see {@link #readHeader}).
+     */
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(time);
+        writeString(out, scriptId);
+        writeString(out, runId);
+        writeString(out, sourceHash);
+        writeString(out, user);
+        out.writeInt(parameters.length);
+        for (Parameter parameter : parameters) {
+            writeString(out, parameter.getName());
+            writeString(out, parameter.getValue());
+        }
+        out.writeInt(nodes.size());
+        for (NodeResult node : nodes) {
+            writeString(out, node.node);
+            out.writeLong(node.duration);
+            out.writeByte(node.status.ordinal());
+            out.writeInt(node.compressedOutput.length);
+            out.write(node.compressedOutput);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static ExecutionRecord fromBytes(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        checkVersion(in.readUnsignedByte());
+        final long time = in.readLong();
+        final String scriptId = readString(in);
+        final String runId = readString(in);
+        final String sourceHash = readString(in);
+        final String user = readString(in);
+        final Parameter[] parameters = new Parameter[in.readInt()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = new Parameter(readString(in), readString(in));
+        }
+        final int nodeCount = in.readInt();
+        final List<NodeResult> nodes = new ArrayList<NodeResult>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            final String node = readString(in);
+            final long duration = in.readLong();
+            final Status status = Status.values()[in.readUnsignedByte()];
+            final byte[] output = new byte[in.readInt()];
+            in.readFully(output);
+            nodes.add(new NodeResult(node, duration, status, output));
+        }
+        return new ExecutionRecord(time, scriptId, runId, sourceHash, user, parameters, nodes);
+    }
+
+    /**
+     * Reads the time and the script id of a record.
+     *
+     * @return the script id, the time is stored in <code>time[0]</code>
+     */
+    static String readHeader(byte[] record, long[] time) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        checkVersion(in.readUnsignedByte());
+        time[0] = in.readLong();
+        return readString(in);
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("unsupported history record version: " + version);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * The outcome of the execution on a single node.
+     */
+    public static class NodeResult {
+        private final String node;
+        private final long duration;
+        private final Status status;
+        private final byte[] compressedOutput;
+
+        /**
+         * @param node             the name of the node
+         * @param duration         the time the execution took in ms
+         * @param status           the outcome
+         * @param compressedOutput the gzipped output, see {@link CompressedOutput}
+         */
+        public NodeResult(String node, long duration, Status status, byte[] compressedOutput) {
+            this.node = node;
+            this.duration = duration;
+            this.status = status;
+            this.compressedOutput = compressedOutput;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the uncompressed output
+         */
+        public String getOutput() throws IOException {
+            if (compressedOutput.length == 0) {
+                return "";
+            }
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedOutput));
+            try {
+                return IOUtils.toString(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.scriptler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the executions of one script on one node via one entry point, all updates are lock-free.
+ */
+public class ExecutionStats {
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(long millis, boolean failed, long bytes) {
+        executions.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        if (bytes > 0) {
+            outputBytes.addAndGet(bytes);
+        }
+        latency.record(millis);
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the share of failed executions, between 0 and 1
+     */
+    public double getFailureRate() {
+        final long count = executions.get();
+        return count == 0 ? 0 : (double) failures.get() / count;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
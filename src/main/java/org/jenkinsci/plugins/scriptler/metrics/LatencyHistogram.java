@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.scriptler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in ms. Values below 16 ms get a bucket each, above that every power of two is split
+ * into 8 buckets - so the reported percentiles are at most 12.5% above the real value.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** values up to 2^40 ms (about 35 years) are distinguished */
+    private static final int MAX_EXPONENT = 40;
+    /** the last bucket takes everything above 2^40 ms */
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4) * SUB_BUCKETS + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * @param millis the latency to record
+     */
+    public void record(long millis) {
+        final long value = Math.max(0, millis);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of all recorded latencies in ms
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the latency the given fraction of the recorded values is lower or equal to. The buckets are read without
+     * locking, values recorded concurrently might or might not be taken into account.
+     *
+     * @param quantile between 0 and 1, e.g. 0.95
+     * @return the upper bound of the bucket the percentile falls into - <code>0</code> if nothing has been recorded
+     */
+    public long getPercentile(double quantile) {
+        long total = 0;
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        final int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        final int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
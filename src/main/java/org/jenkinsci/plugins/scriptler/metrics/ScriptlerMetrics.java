@@ -0,0 +1,229 @@
+package org.jenkinsci.plugins.scriptler.metrics;
+
+import hudson.model.Hudson;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Execution metrics per script, node and entry point. Recording is lock-free (a concurrent map lookup and a few atomic
+ * increments), so it is always on. Exposed as JSON at <code>/scriptler/metrics</code> and in the Prometheus text format at
+ * <code>/scriptler/metrics/prometheus</code>.
+ */
+public class ScriptlerMetrics {
+
+    /** how a script got executed */
+    public enum EntryPoint {
+        CONSOLE, BUILDER, TOKEN_MACRO;
+
+        public String getLabel() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final ScriptlerMetrics INSTANCE = new ScriptlerMetrics();
+
+    private final ConcurrentMap<Series, ExecutionStats> stats = new ConcurrentHashMap<Series, ExecutionStats>();
+
+    public static ScriptlerMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a single execution.
+     *
+     * @param entryPoint how the script got executed
+     * @param scriptId   the id of the script
+     * @param node       where the script got executed
+     * @param millis     the time the execution took
+     * @param failed     did the execution fail?
+     * @param bytes      the number of bytes the script wrote to its output
+     */
+    public void record(EntryPoint entryPoint, String scriptId, String node, long millis, boolean failed, long bytes) {
+        final Series series = new Series(entryPoint, String.valueOf(scriptId), String.valueOf(node));
+        ExecutionStats seriesStats = stats.get(series);
+        if (seriesStats == null) {
+            final ExecutionStats created = new ExecutionStats();
+            seriesStats = stats.putIfAbsent(series, created);
+            if (seriesStats == null) {
+                seriesStats = created;
+            }
+        }
+        seriesStats.record(millis, failed, bytes);
+    }
+
+    /**
+     * Starts measuring an execution, the returned time has to be passed to {@link #since(long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the ms elapsed since the given {@link #start()}
+     */
+    public static long since(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the stats of the given series - <code>null</code> if nothing has been recorded for it
+     */
+    public ExecutionStats getStats(EntryPoint entryPoint, String scriptId, String node) {
+        return stats.get(new Series(entryPoint, String.valueOf(scriptId), String.valueOf(node)));
+    }
+
+    public void clear() {
+        stats.clear();
+    }
+
+    public JSONArray toJSON() {
+        JSONArray json = new JSONArray();
+        for (Map.Entry<Series, ExecutionStats> entry : sortedSeries()) {
+            final Series series = entry.getKey();
+            final ExecutionStats seriesStats = entry.getValue();
+            JSONObject item = new JSONObject();
+            item.put("entryPoint", series.entryPoint.getLabel());
+            item.put("script", series.scriptId);
+            item.put("node", series.node);
+            item.put("executions", seriesStats.getExecutions());
+            item.put("failures", seriesStats.getFailures());
+            item.put("failureRate", seriesStats.getFailureRate());
+            item.put("outputBytes", seriesStats.getOutputBytes());
+            final LatencyHistogram latency = seriesStats.getLatency();
+            item.put("latencySumMs", latency.getSum());
+            item.put("p50Ms", latency.getPercentile(0.5));
+            item.put("p95Ms", latency.getPercentile(0.95));
+            item.put("p99Ms", latency.getPercentile(0.99));
+            json.add(item);
+        }
+        return json;
+    }
+
+    /**
+     * Writes all series in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writePrometheus(PrintWriter out) {
+        final List<Map.Entry<Series, ExecutionStats>> all = sortedSeries();
+        out.println("# HELP scriptler_executions_total Number of script executions.");
+        out.println("# TYPE scriptler_executions_total counter");
+        for (Map.Entry<Series, ExecutionStats> entry : all) {
+            out.println("scriptler_executions_total" + entry.getKey().labels(null) + " " + entry.getValue().getExecutions());
+        }
+        out.println("# HELP scriptler_failures_total Number of failed script executions.");
+        out.println("# TYPE scriptler_failures_total counter");
+        for (Map.Entry<Series, ExecutionStats> entry : all) {
+            out.println("scriptler_failures_total" + entry.getKey().labels(null) + " " + entry.getValue().getFailures());
+        }
+        out.println("# HELP scriptler_output_bytes_total Bytes of output written by script executions.");
+        out.println("# TYPE scriptler_output_bytes_total counter");
+        for (Map.Entry<Series, ExecutionStats> entry : all) {
+            out.println("scriptler_output_bytes_total" + entry.getKey().labels(null) + " " + entry.getValue().getOutputBytes());
+        }
+        out.println("# HELP scriptler_execution_duration_seconds Duration of script executions.");
+        out.println("# TYPE scriptler_execution_duration_seconds summary");
+        for (Map.Entry<Series, ExecutionStats> entry : all) {
+            final Series series = entry.getKey();
+            final LatencyHistogram latency = entry.getValue().getLatency();
+            for (String quantile : new String[] { "0.5", "0.95", "0.99" }) {
+                out.println("scriptler_execution_duration_seconds" + series.labels(quantile) + " " + seconds(latency.getPercentile(Double.parseDouble(quantile))));
+            }
+            out.println("scriptler_execution_duration_seconds_sum" + series.labels(null) + " " + seconds(latency.getSum()));
+            out.println("scriptler_execution_duration_seconds_count" + series.labels(null) + " " + latency.getCount());
+        }
+        out.flush();
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(toJSON().toString());
+    }
+
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4;charset=UTF-8");
+        writePrometheus(rsp.getWriter());
+    }
+
+    private List<Map.Entry<Series, ExecutionStats>> sortedSeries() {
+        final List<Map.Entry<Series, ExecutionStats>> all = new ArrayList<Map.Entry<Series, ExecutionStats>>(stats.entrySet());
+        Collections.sort(all, new Comparator<Map.Entry<Series, ExecutionStats>>() {
+            public int compare(Map.Entry<Series, ExecutionStats> o1, Map.Entry<Series, ExecutionStats> o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return all;
+    }
+
+    private static String seconds(long millis) {
+        return millis == Long.MAX_VALUE ? "+Inf" : String.valueOf(millis / 1000d);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Series implements Comparable<Series> {
+        private final EntryPoint entryPoint;
+        private final String scriptId;
+        private final String node;
+
+        Series(EntryPoint entryPoint, String scriptId, String node) {
+            this.entryPoint = entryPoint;
+            this.scriptId = scriptId;
+            this.node = node;
+        }
+
+        String labels(String quantile) {
+            return "{entry_point=\"" + entryPoint.getLabel() + "\",script=\"" + escape(scriptId) + "\",node=\"" + escape(node) + "\""
+                    + (quantile == null ? "" : ",quantile=\"" + quantile + "\"") + "}";
+        }
+
+        public int compareTo(Series o) {
+            int result = scriptId.compareTo(o.scriptId);
+            if (result == 0) {
+                result = node.compareTo(o.node);
+            }
+            if (result == 0) {
+                result = entryPoint.compareTo(o.entryPoint);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = entryPoint.hashCode();
+            result = prime * result + scriptId.hashCode();
+            result = prime * result + node.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Series)) {
+                return false;
+            }
+            Series other = (Series) obj;
+            return entryPoint == other.entryPoint && scriptId.equals(other.scriptId) && node.equals(other.node);
+        }
+    }
+}
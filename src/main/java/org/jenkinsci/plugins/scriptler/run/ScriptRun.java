@@ -0,0 +1,514 @@
+package org.jenkinsci.plugins.scriptler.run;
+
+import hudson.Util;
+import hudson.model.Hudson;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.acegisecurity.AccessDeniedException;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.scriptler.Messages;
+import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.history.CompressedOutput;
+import org.jenkinsci.plugins.scriptler.history.ExecutionHistory;
+import org.jenkinsci.plugins.scriptler.history.ExecutionRecord;
+import org.jenkinsci.plugins.scriptler.util.BoundedOutputSink;
+import org.jenkinsci.plugins.scriptler.util.NodeFanOut;
+import org.jenkinsci.plugins.scriptler.util.ScriptHelper;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * A single execution of a script on one or more nodes. The run can either be executed synchronously via {@link #run()}
+ * or be submitted to the {@link ScriptRunService}, in which case it is accessible at <code>/scriptler/run/&lt;id&gt;</code>.
+ */
+public class ScriptRun implements Runnable {
+
+    private final static Logger LOGGER = Logger.getLogger(ScriptRun.class.getName());
+
+    static final String SEPARATOR = "___________________________________________\n";
+
+    /** number of bytes from the start of the log shown on the page, the complete log is only available as download */
+    static final long VIEW_HEAD_LIMIT = Long.getLong(ScriptRun.class.getName() + ".viewHeadLimit", 1024 * 1024);
+
+    /** number of bytes from the end of the log shown on the page once the run is done */
+    static final long VIEW_TAIL_LIMIT = Long.getLong(ScriptRun.class.getName() + ".viewTailLimit", 256 * 1024);
+
+    public enum State {
+        QUEUED, RUNNING, FINISHED, CANCELLED
+    }
+
+    private final String id;
+    private final Script script;
+    private final String[] nodes;
+    private final long timeout;
+    private final String user;
+    /** the scripts run as the user who submitted the run */
+    private final Authentication auth;
+    private final File logFile;
+    private final long[] blockOffsets;
+    private final long[] blockLengths;
+    /** outcome of the nodes, collected for the {@link ExecutionHistory} */
+    private final long[] nodeDurations;
+    private final ExecutionRecord.Status[] nodeStatuses;
+    private final byte[][] nodeOutputs;
+    private final Object logLock = new Object();
+    private CountingOutputStream log;
+    private final AtomicInteger completedNodes = new AtomicInteger();
+    private final long submitTime;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile State state = State.QUEUED;
+    /** set once all output has been written, the state might already be cancelled before */
+    private volatile boolean done;
+    private volatile List<Future<Void>> nodeFutures = Collections.emptyList();
+
+    /**
+     * @param id      the id of the run
+     * @param script  the script to execute
+     * @param nodes   the nodes to execute the script on
+     * @param logFile receives the output of the nodes while they finish
+     */
+    public ScriptRun(String id, Script script, String[] nodes, File logFile) {
+        this(id, script, nodes, script.getTimeout(), logFile);
+    }
+
+    /**
+     * @param id      the id of the run
+     * @param script  the script to execute
+     * @param nodes   the nodes to execute the script on
+     * @param timeout max number of seconds the script may take on each node, <code>0</code> for no limit
+     * @param logFile receives the output of the nodes while they finish
+     */
+    public ScriptRun(String id, Script script, String[] nodes, long timeout, File logFile) {
+        this.id = id;
+        this.script = script;
+        this.nodes = nodes;
+        this.timeout = timeout;
+        this.logFile = logFile;
+        this.auth = Jenkins.getAuthentication();
+        this.user = auth.getName();
+        this.blockOffsets = new long[nodes.length];
+        this.blockLengths = new long[nodes.length];
+        Arrays.fill(blockOffsets, -1);
+        this.nodeDurations = new long[nodes.length];
+        this.nodeStatuses = new ExecutionRecord.Status[nodes.length];
+        this.nodeOutputs = new byte[nodes.length][];
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    public void run() {
+        synchronized (this) {
+            if (state != State.QUEUED) {
+                return;
+            }
+            try {
+                log = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "failed to create the log of run " + id, e);
+                state = State.CANCELLED;
+                done = true;
+                return;
+            }
+            state = State.RUNNING;
+            startTime = System.currentTimeMillis();
+            nodeFutures = NodeFanOut.submit(auth, nodes, new NodeFanOut.NodeTask<Void>() {
+                public Void call(int index, String node) throws Exception {
+                    LOGGER.log(Level.FINE, "here is the node -> " + node);
+                    BoundedOutputSink out = new BoundedOutputSink(logFile.getParentFile(), BoundedOutputSink.MEMORY_THRESHOLD, BoundedOutputSink.NODE_OUTPUT_CAP);
+                    final long nodeStart = System.currentTimeMillis();
+                    ExecutionRecord.Status status = ExecutionRecord.Status.SUCCESS;
+                    try {
+                        if (Boolean.FALSE.equals(ScriptHelper.runScript(node, script, out, timeout))) {
+                            status = ExecutionRecord.Status.FAILURE;
+                        }
+                    } catch (Exception e) {
+                        status = ExecutionRecord.Status.FAILURE;
+                        LOGGER.log(Level.WARNING, Messages.node_execution_failed(node), e);
+                        out.write((Messages.node_execution_failed(node) + " - " + e + "\n").getBytes());
+                    } finally {
+                        appendNodeOutput(index, out, status, System.currentTimeMillis() - nodeStart);
+                        out.close();
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                try {
+                    nodeFutures.get(i).get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.WARNING, Messages.node_execution_failed(nodes[i]), e.getCause());
+                } catch (CancellationException e) {
+                    appendCancelled(i);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < nodes.length; i++) {
+                appendCancelled(i);
+            }
+        } finally {
+            closeLog();
+            endTime = System.currentTimeMillis();
+            synchronized (this) {
+                if (state == State.RUNNING) {
+                    state = State.FINISHED;
+                }
+                done = true;
+            }
+            recordHistory();
+        }
+    }
+
+    private void appendCancelled(int index) {
+        final byte[] output = (Messages.node_execution_cancelled(nodes[index]) + "\n").getBytes();
+        BoundedOutputSink sink = new BoundedOutputSink(logFile.getParentFile(), output.length, 0);
+        try {
+            sink.write(output);
+            appendNodeOutput(index, sink, ExecutionRecord.Status.CANCELLED, System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to write the output of node " + nodes[index] + " to the log of run " + id, e);
+        }
+    }
+
+    /**
+     * Appends the output of a node to the log - once the node is done, the output of each node is only written once.
+     */
+    private void appendNodeOutput(int index, BoundedOutputSink output, ExecutionRecord.Status status, long duration) {
+        synchronized (logLock) {
+            if (log == null || blockOffsets[index] >= 0) {
+                return;
+            }
+            nodeStatuses[index] = status;
+            nodeDurations[index] = duration;
+            try {
+                final long offset = log.getByteCount();
+                log.write((SEPARATOR + "[" + nodes[index] + "]:\n").getBytes());
+                final CompressedOutput historyOutput = new CompressedOutput(CompressedOutput.MAX_OUTPUT);
+                output.writeTo(new TeeOutputStream(log, historyOutput));
+                log.flush();
+                blockOffsets[index] = offset;
+                blockLengths[index] = log.getByteCount() - offset;
+                nodeOutputs[index] = historyOutput.toByteArray();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "failed to write the output of node " + nodes[index] + " to the log of run " + id, e);
+            } finally {
+                completedNodes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the outcome of all nodes to the {@link ExecutionHistory}.
+     */
+    private void recordHistory() {
+        final List<ExecutionRecord.NodeResult> results = new ArrayList<ExecutionRecord.NodeResult>(nodes.length);
+        synchronized (logLock) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodeStatuses[i] != null) {
+                    results.add(new ExecutionRecord.NodeResult(nodes[i], nodeDurations[i], nodeStatuses[i], nodeOutputs[i] == null ? new byte[0] : nodeOutputs[i]));
+                    nodeOutputs[i] = null;
+                }
+            }
+        }
+        final String sourceHash = script.script == null ? null : Util.getDigestOf(script.script);
+        final ExecutionRecord record = new ExecutionRecord(System.currentTimeMillis(), script.getId(), id, sourceHash, user, script.getParameters(), results);
+        try {
+            ExecutionHistory.get().append(record);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to add run " + id + " to the execution history", e);
+        }
+    }
+
+    private void closeLog() {
+        synchronized (logLock) {
+            try {
+                log.write(SEPARATOR.getBytes());
+                log.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "failed to close the log of run " + id, e);
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Cancels the run, the executions still running on the nodes get interrupted.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (done || state == State.CANCELLED) {
+                return;
+            }
+            if (state == State.QUEUED) {
+                endTime = System.currentTimeMillis();
+                done = true;
+            }
+            state = State.CANCELLED;
+        }
+        NodeFanOut.cancelAll(nodeFutures);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Script getScript() {
+        return script;
+    }
+
+    public String[] getNodes() {
+        return nodes.clone();
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return may the current user see and cancel this run? Only the user who submitted it and administrators may.
+     */
+    public boolean isAccessible() {
+        return user.equals(Jenkins.getAuthentication().getName()) || Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return <code>true</code> once the run finished or got cancelled and all of its output has been written
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getCompletedNodes() {
+        return completedNodes.get();
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    /**
+     * @return the duration of the run in ms, runs still in progress return the time elapsed so far.
+     */
+    public long getDuration() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * Returns the output of all nodes, in the same order as the nodes of this run.
+     *
+     * @return the output - <code>null</code> as long as the run is not done
+     */
+    public String getOutput() throws IOException {
+        if (!isDone()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeOutput(out);
+        return out.toString();
+    }
+
+    /**
+     * Writes the output of all nodes to the given stream, in the same order as the nodes of this run. Must only be
+     * called once the run is done.
+     */
+    private void writeOutput(OutputStream out) throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(logFile, "r");
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                if (blockOffsets[i] >= 0) {
+                    copy(raf, blockOffsets[i], blockLengths[i], out);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        out.write(SEPARATOR.getBytes());
+    }
+
+    /**
+     * Removes the log of this run.
+     */
+    public void dispose() {
+        if (isDone() && logFile.exists() && !logFile.delete()) {
+            LOGGER.log(Level.WARNING, "failed to delete the log of run {0}: {1}", new Object[] { id, logFile });
+        }
+    }
+
+    /**
+     * Status and progress of this run as JSON.
+     */
+    public JSONObject toJSON() {
+        JSONObject status = new JSONObject();
+        status.put("id", id);
+        status.put("script", script.getId());
+        status.put("user", user);
+        status.put("state", state.name());
+        status.put("nodes", nodes.length);
+        status.put("completedNodes", completedNodes.get());
+        status.put("done", done);
+        final long size = logFile.length();
+        status.put("size", size);
+        status.put("skippedBytes", size > VIEW_HEAD_LIMIT ? getTailStart(size) - VIEW_HEAD_LIMIT : 0);
+        status.put("duration", getDuration());
+        return status;
+    }
+
+    public void doStatus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        checkPermission();
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(toJSON().toString());
+    }
+
+    /**
+     * Sends the complete output of this run, in the same order as the nodes.
+     */
+    public void doOutput(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        checkPermission();
+        if (!isDone()) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType("text/plain");
+        writeOutput(rsp.getOutputStream());
+    }
+
+    /**
+     * Sends the output written since the offset given by the request parameter <code>start</code> (the same protocol as
+     * {@link org.kohsuke.stapler.framework.io.LargeText#doProgressText}). Only the first {@link #VIEW_HEAD_LIMIT} bytes
+     * are sent, for the rest only the size is reported.
+     */
+    public void doProgressiveText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        checkPermission();
+        // check before reading the size, so no output written in between gets lost
+        final boolean completed = isDone();
+        final long size = logFile.length();
+        long start = 0;
+        final String startParam = req.getParameter("start");
+        if (startParam != null) {
+            try {
+                start = Math.min(Long.parseLong(startParam), size);
+            } catch (NumberFormatException e) {
+                start = 0;
+            }
+        }
+        rsp.setContentType("text/plain;charset=" + Charset.defaultCharset().name());
+        long next = Math.max(start, size);
+        if (start < VIEW_HEAD_LIMIT) {
+            next = Math.min(size, VIEW_HEAD_LIMIT);
+        }
+        rsp.addHeader("X-Text-Size", String.valueOf(next));
+        if (!completed) {
+            rsp.addHeader("X-More-Data", "true");
+        }
+        if (start < VIEW_HEAD_LIMIT) {
+            copyLog(start, next - start, rsp.getOutputStream());
+        }
+    }
+
+    /**
+     * Sends the last {@link #VIEW_TAIL_LIMIT} bytes of the log not already covered by {@link #doProgressiveText}.
+     */
+    public void doTail(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        checkPermission();
+        if (!isDone()) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        final long size = logFile.length();
+        final long tailStart = getTailStart(size);
+        rsp.setContentType("text/plain;charset=" + Charset.defaultCharset().name());
+        copyLog(tailStart, size - tailStart, rsp.getOutputStream());
+    }
+
+    private long getTailStart(long size) {
+        return Math.max(VIEW_HEAD_LIMIT, size - VIEW_TAIL_LIMIT);
+    }
+
+    private void copyLog(long offset, long length, OutputStream out) throws IOException {
+        if (length <= 0 || !logFile.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(logFile, "r");
+        try {
+            copy(raf, offset, length, out);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void copy(RandomAccessFile raf, long offset, long length, OutputStream out) throws IOException {
+        byte[] buf = new byte[8192];
+        raf.seek(offset);
+        long remaining = length;
+        while (remaining > 0) {
+            int read = raf.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            out.write(buf, 0, read);
+            remaining -= read;
+        }
+    }
+
+    public HttpResponse doCancel(StaplerRequest req) throws IOException, ServletException {
+        checkPermission();
+        if (!"POST".equals(req.getMethod())) {
+            return HttpResponses.error(StaplerResponse.SC_METHOD_NOT_ALLOWED, "POST required");
+        }
+        cancel();
+        return HttpResponses.ok();
+    }
+
+    private void checkPermission() {
+        final ScriptlerManagment scriptler = Jenkins.getInstance().getExtensionList(ScriptlerManagment.class).get(0);
+        Hudson.getInstance().checkPermission(scriptler.getRequiredPermissionForRunScript());
+        if (!isAccessible()) {
+            throw new AccessDeniedException(Jenkins.getAuthentication().getName() + " may not access the run " + id + " of " + user);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.scriptler.run;
+
+import hudson.Extension;
+import hudson.util.ExceptionCatchingThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jenkins.model.Jenkins;
+
+import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.util.NamedDaemonThreadFactory;
+
+/**
+ * Executes script runs in the background, so that the request triggering a run does not have to wait until the script
+ * finished on all nodes. The number of runs executed at the same time and the number of runs waiting for execution are
+ * bounded, the last finished runs are kept to be displayed.
+ */
+@Extension
+public class ScriptRunService {
+
+    /** max number of runs executed at the same time */
+    private static final int MAX_CONCURRENT_RUNS = Integer.getInteger(ScriptRunService.class.getName() + ".maxConcurrentRuns", 4);
+
+    /** max number of runs waiting for execution */
+    private static final int MAX_QUEUED_RUNS = Integer.getInteger(ScriptRunService.class.getName() + ".maxQueuedRuns", 20);
+
+    /** number of finished runs to keep */
+    private static final int MAX_FINISHED_RUNS = Integer.getInteger(ScriptRunService.class.getName() + ".maxFinishedRuns", 50);
+
+    private static final AtomicInteger CURRENT_ID = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_RUNS, MAX_CONCURRENT_RUNS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_QUEUED_RUNS), new ExceptionCatchingThreadFactory(new NamedDaemonThreadFactory("Scriptler run")));
+
+    private final Map<String, ScriptRun> runs = new LinkedHashMap<String, ScriptRun>();
+
+    public ScriptRunService() {
+        executor.allowCoreThreadTimeOut(true);
+        // logs left over from a previous start are not accessible anymore
+        final File[] logs = getRunsDirectory().listFiles();
+        if (logs != null) {
+            for (File log : logs) {
+                log.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the directory holding the output of the runs, created if missing
+     */
+    public static File getRunsDirectory() {
+        File dir = new File(ScriptlerManagment.getScriptlerHomeDirectory(), "runs");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    public static ScriptRunService get() {
+        return Jenkins.getInstance().getExtensionList(ScriptRunService.class).get(0);
+    }
+
+    /**
+     * Submits the script to be executed on the given nodes, returns immediately.
+     *
+     * @param script the script to execute
+     * @param nodes  the nodes to execute the script on
+     * @return the submitted run
+     * @throws IOException if the log of the run could not be created
+     * @throws RejectedExecutionException if there are already too many runs waiting for execution
+     */
+    public ScriptRun submit(Script script, String[] nodes) throws IOException {
+        return submit(script, nodes, script.getTimeout());
+    }
+
+    /**
+     * Submits the script to be executed on the given nodes, returns immediately.
+     *
+     * @param script  the script to execute
+     * @param nodes   the nodes to execute the script on
+     * @param timeout max number of seconds the script may take on each node, <code>0</code> for no limit
+     * @return the submitted run
+     * @throws IOException if the log of the run could not be created
+     * @throws RejectedExecutionException if there are already too many runs waiting for execution
+     */
+    public ScriptRun submit(Script script, String[] nodes, long timeout) throws IOException {
+        final String id = System.currentTimeMillis() + "_" + CURRENT_ID.incrementAndGet();
+        final File logFile = new File(getRunsDirectory(), id + ".log");
+        logFile.createNewFile();
+        final ScriptRun run = new ScriptRun(id, script, nodes, timeout, logFile);
+        synchronized (runs) {
+            runs.put(run.getId(), run);
+            evictFinishedRuns();
+        }
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            synchronized (runs) {
+                runs.remove(run.getId());
+            }
+            logFile.delete();
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * @param id the id of the run
+     * @return the run - <code>null</code> if there is no such run (anymore) or if the current user may not access it
+     *         (see {@link ScriptRun#isAccessible()})
+     */
+    public ScriptRun getRun(String id) {
+        final ScriptRun run;
+        synchronized (runs) {
+            run = runs.get(id);
+        }
+        return run != null && run.isAccessible() ? run : null;
+    }
+
+    /**
+     * @return all runs currently known, the oldest first
+     */
+    public List<ScriptRun> getRuns() {
+        synchronized (runs) {
+            return new ArrayList<ScriptRun>(runs.values());
+        }
+    }
+
+    /**
+     * Cancels all runs and stops accepting new ones.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        for (ScriptRun run : getRuns()) {
+            run.cancel();
+        }
+    }
+
+    private void evictFinishedRuns() {
+        int finished = 0;
+        for (ScriptRun run : runs.values()) {
+            if (run.isDone()) {
+                finished++;
+            }
+        }
+        for (Iterator<ScriptRun> it = runs.values().iterator(); it.hasNext() && finished > MAX_FINISHED_RUNS;) {
+            final ScriptRun run = it.next();
+            if (run.isDone()) {
+                it.remove();
+                run.dispose();
+                finished--;
+            }
+        }
+    }
+}
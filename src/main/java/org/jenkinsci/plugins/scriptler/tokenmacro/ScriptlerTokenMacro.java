@@ -3,11 +3,15 @@ package org.jenkinsci.plugins.scriptler.tokenmacro;
 import hudson.Extension;
 import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
+import hudson.util.StreamTaskListener;
 
 import java.io.IOException;
 
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.scriptler.Messages;
 import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.metrics.ScriptlerMetrics;
 import org.jenkinsci.plugins.scriptler.util.GroovyScript;
 import org.jenkinsci.plugins.scriptler.util.ScriptHelper;
 import org.jenkinsci.plugins.tokenmacro.DataBoundTokenMacro;
@@ -36,9 +40,21 @@ public class ScriptlerTokenMacro extends DataBoundTokenMacro {
             throw new MacroEvaluationException(Messages.tokenmacro_AdminScriptOnly(scriptId));
         }
 
-        Object output = context.getWorkspace().getChannel().call(new GroovyScript(script.script, null, true, listener));
-
-        return output != null ? output.toString() : "";
+        // counts the bytes written by the script, like ScriptHelper.runScript does
+        final CountingOutputStream countingOut = new CountingOutputStream(listener.getLogger());
+        final GroovyScript groovyScript = new GroovyScript(script.script, null, true, new StreamTaskListener(countingOut));
+        groovyScript.setTimeout(script.getTimeout());
+        final long start = ScriptlerMetrics.start();
+        String result = null;
+        try {
+            Object output = context.getWorkspace().getChannel().call(groovyScript);
+            result = output != null ? output.toString() : "";
+            return result;
+        } finally {
+            final String node = StringUtils.isEmpty(context.getBuiltOnStr()) ? "(master)" : context.getBuiltOnStr();
+            ScriptlerMetrics.get().record(ScriptlerMetrics.EntryPoint.TOKEN_MACRO, scriptId, node, ScriptlerMetrics.since(start),
+                    result == null, countingOut.getByteCount());
+        }
     }
 
     @Override
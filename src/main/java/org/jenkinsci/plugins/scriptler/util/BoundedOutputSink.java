@@ -0,0 +1,141 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Captures the output of a script execution. The output is kept in memory up to a threshold, bigger output is spilled
+ * to a temporary file. Everything exceeding the cap gets dropped, this is marked at the end of the captured output.
+ */
+public class BoundedOutputSink extends OutputStream {
+
+    /** max number of bytes kept in memory before the output is spilled to disk */
+    public static final int MEMORY_THRESHOLD = Integer.getInteger(BoundedOutputSink.class.getName() + ".memoryThreshold", 64 * 1024);
+
+    /** max number of bytes captured per node, <code>0</code> captures everything */
+    public static final long NODE_OUTPUT_CAP = Long.getLong(BoundedOutputSink.class.getName() + ".nodeOutputCap", 10 * 1024 * 1024);
+
+    private final File spillDirectory;
+    private final int memoryThreshold;
+    private final long cap;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File spillFile;
+    private OutputStream spill;
+    private long size;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * @param spillDirectory where to create the temporary file if the output exceeds the memory threshold
+     * @param memoryThreshold max number of bytes kept in memory
+     * @param cap max number of bytes captured, <code>0</code> captures everything
+     */
+    public BoundedOutputSink(File spillDirectory, int memoryThreshold, long cap) {
+        this.spillDirectory = spillDirectory;
+        this.memoryThreshold = memoryThreshold;
+        this.cap = cap;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            // output arriving late from the remote side is ignored
+            return;
+        }
+        int accepted = len;
+        if (cap > 0 && size + len > cap) {
+            accepted = (int) Math.max(0, cap - size);
+            dropped += len - accepted;
+        }
+        if (accepted == 0) {
+            return;
+        }
+        if (spill == null && size + accepted > memoryThreshold) {
+            spillFile = File.createTempFile("output", ".tmp", spillDirectory);
+            spill = new FileOutputStream(spillFile);
+            memory.writeTo(spill);
+            memory = null;
+        }
+        if (spill != null) {
+            spill.write(b, off, accepted);
+        } else {
+            memory.write(b, off, accepted);
+        }
+        size += accepted;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (spill != null) {
+            spill.flush();
+        }
+    }
+
+    /**
+     * @return the number of bytes captured
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes dropped because the cap was reached
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Writes the captured output to the given stream, followed by a marker if output has been dropped.
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        if (closed) {
+            throw new IOException("output already released");
+        }
+        if (spill != null) {
+            spill.flush();
+            InputStream in = new FileInputStream(spillFile);
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                in.close();
+            }
+        } else {
+            memory.writeTo(out);
+        }
+        if (dropped > 0) {
+            out.write(("\n... [output truncated, " + dropped + " bytes dropped]\n").getBytes());
+        }
+    }
+
+    /**
+     * Releases the captured output, removes the temporary file if there is one.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        memory = null;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            spillFile.delete();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import hudson.Util;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+/**
+ * Keeps the classes of already compiled groovy scripts, so that the same script does not have to be parsed and compiled
+ * again each time it gets executed. Entries are kept per classloader the scripts were compiled with and keyed by a hash
+ * of the source and the compiler configuration, the least recently used entry of a classloader gets evicted once it has
+ * <code>maxSize</code> entries.
+ * <p>
+ * The cache does not keep a classloader alive after a plugin reload or a swap of the uberClassLoader: the classloaders
+ * are only weakly referenced. As each compiled class references the classloader it was compiled with, the classes are
+ * only softly referenced - otherwise they would keep their classloader reachable.
+ */
+public class CompiledScriptCache {
+
+    private final int maxSize;
+    /** guarded by itself */
+    private final Map<ClassLoader, Map<Key, SoftReference<Class<? extends Script>>>> classes = new WeakHashMap<ClassLoader, Map<Key, SoftReference<Class<? extends Script>>>>();
+
+    public CompiledScriptCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the compiled class of the given script, the script gets only compiled if it is not already in the cache.
+     *
+     * @param source    the script source
+     * @param loader    the parent classloader to compile the script with
+     * @param configKey identifies the given compiler configuration, scripts compiled with different configurations are cached separately
+     * @param config    the compiler configuration to use if the script has to be compiled
+     * @return the compiled script class
+     */
+    public Class<? extends Script> getScriptClass(String source, ClassLoader loader, String configKey, CompilerConfiguration config) {
+        final Key key = new Key(Util.getDigestOf(source), configKey);
+        synchronized (classes) {
+            final Class<? extends Script> cached = get(loader, key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // compile outside of the lock, compiling can take a while and must not block the other scripts
+        final Class<? extends Script> compiled = new GroovyShell(loader, new Binding(), config).parse(source).getClass();
+        synchronized (classes) {
+            final Class<? extends Script> concurrent = get(loader, key);
+            if (concurrent != null) {
+                return concurrent;
+            }
+            getClasses(loader).put(key, new SoftReference<Class<? extends Script>>(compiled));
+        }
+        return compiled;
+    }
+
+    /** must be called with the lock held */
+    private Class<? extends Script> get(ClassLoader loader, Key key) {
+        final Map<Key, SoftReference<Class<? extends Script>>> loaderClasses = classes.get(loader);
+        if (loaderClasses == null) {
+            return null;
+        }
+        final SoftReference<Class<? extends Script>> ref = loaderClasses.get(key);
+        if (ref == null) {
+            return null;
+        }
+        final Class<? extends Script> cached = ref.get();
+        if (cached == null) {
+            // collected, as memory got short
+            loaderClasses.remove(key);
+        }
+        return cached;
+    }
+
+    /** must be called with the lock held */
+    private Map<Key, SoftReference<Class<? extends Script>>> getClasses(ClassLoader loader) {
+        Map<Key, SoftReference<Class<? extends Script>>> loaderClasses = classes.get(loader);
+        if (loaderClasses == null) {
+            loaderClasses = new LinkedHashMap<Key, SoftReference<Class<? extends Script>>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, SoftReference<Class<? extends Script>>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+            classes.put(loader, loaderClasses);
+        }
+        return loaderClasses;
+    }
+
+    public int size() {
+        synchronized (classes) {
+            int size = 0;
+            for (Map<Key, SoftReference<Class<? extends Script>>> loaderClasses : classes.values()) {
+                size += loaderClasses.size();
+            }
+            return size;
+        }
+    }
+
+    public void clear() {
+        synchronized (classes) {
+            classes.clear();
+        }
+    }
+
+    private static final class Key {
+        private final String sourceHash;
+        private final String configKey;
+
+        Key(String sourceHash, String configKey) {
+            this.sourceHash = sourceHash;
+            this.configKey = configKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceHash.hashCode() + configKey.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return sourceHash.equals(other.sourceHash) && configKey.equals(other.configKey);
+        }
+    }
+}
@@ -22,6 +22,8 @@ public class ExecutableScript {
     private Launcher launcher;
     private TaskListener listener;
     private AbstractBuild<?, ?> build;
+    private int maxResultLength;
+    private long timeout;
 
     private ExecutableScript(Script script) {
         this.script = script;
@@ -57,15 +59,35 @@ public class ExecutableScript {
         return this;
     }
 
+    /** Limits the size of the result returned by a {@link GroovyScript}, see {@link GroovyScript#setMaxResultLength(int)} */
+    public ExecutableScript withMaxResultLength(int maxResultLength) {
+        this.maxResultLength = maxResultLength;
+        return this;
+    }
+
+    /** Limits the time in seconds the script may take, <code>0</code> does not limit the execution time */
+    public ExecutableScript withTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
     public Callable<Object, RuntimeException> build() {
         Script.Interpreter interpreter = Script.Interpreter.parse(script.interpreter);
         if (interpreter == Script.Interpreter.SHEBANG) {
             FilePath workspace = build == null ? null : build.getWorkspace();
-            return new ShellScript(script.script, workspace, listener, params);
-        } else if (interpreter == Script.Interpreter.GROOVY && script.onlyMaster) {
-            return new GroovyScript(script.script, params, true, listener, launcher, build);
+            ShellScript shellScript = new ShellScript(script.script, workspace, listener, params);
+            shellScript.setTimeout(timeout);
+            return shellScript;
         } else if (interpreter == Script.Interpreter.GROOVY) {
-            return new GroovyScript(script.script, params, true, listener);
+            GroovyScript groovyScript;
+            if (script.onlyMaster) {
+                groovyScript = new GroovyScript(script.script, params, true, listener, launcher, build);
+            } else {
+                groovyScript = new GroovyScript(script.script, params, true, listener);
+            }
+            groovyScript.setMaxResultLength(maxResultLength);
+            groovyScript.setTimeout(timeout);
+            return groovyScript;
         } else {
             throw new IllegalArgumentException("Could not figure out how to run the script: " + this.toString());
         }
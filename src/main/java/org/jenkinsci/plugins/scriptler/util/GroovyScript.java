@@ -1,6 +1,6 @@
 package org.jenkinsci.plugins.scriptler.util;
 
-import groovy.lang.GroovyShell;
+import groovy.lang.Binding;
 import hudson.Launcher;
 import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
@@ -9,9 +9,20 @@ import hudson.remoting.DelegatingCallable;
 import java.io.PrintStream;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import jenkins.model.Jenkins;
 
+import groovy.transform.ThreadInterrupt;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jenkinsci.plugins.scriptler.Messages;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.share.EnvObjects;
@@ -28,6 +39,8 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
     private transient final AbstractBuild<?, ?> build;
     private transient final Launcher launcher;
     private transient ClassLoader cl;
+    private int maxResultLength;
+    private long timeout;
 
     private static final Set<String> DEFAULT_VARIABLES = new HashSet<String>();
     static {
@@ -37,6 +50,15 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
         DEFAULT_VARIABLES.add("launcher");
     }
 
+    /**
+     * Compiled classes of the scripts executed in this JVM (master or slave), only the binding is created fresh for each
+     * execution.
+     */
+    private static final CompiledScriptCache COMPILED_SCRIPTS = new CompiledScriptCache(Integer.getInteger(GroovyScript.class.getName() + ".compiledScriptCacheSize", 100));
+
+    /** interrupts the scripts exceeding their timeout */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Scriptler script timeout"));
+
     /**
      * This constructor can only be used when the script is executed on the master, because launcher and build can not be transered to a slave and the therefore the execution will fail
      * @param script the script to be executed
@@ -67,6 +89,26 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
         this(script, parameters, failWithException, listener, null, null);
     }
 
+    /**
+     * Limits the size of the result returned (and printed) by this script. Results exceeding the limit are returned
+     * as truncated string, boolean results are always returned as they are.
+     *
+     * @param maxResultLength max number of characters, <code>0</code> does not limit the result
+     */
+    public void setMaxResultLength(int maxResultLength) {
+        this.maxResultLength = maxResultLength;
+    }
+
+    /**
+     * Limits the time the script may take. The script is compiled with interrupt checks (see {@link ThreadInterrupt})
+     * and gets interrupted once the time is up.
+     *
+     * @param timeout max number of seconds, <code>0</code> does not limit the execution time
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
     public ClassLoader getClassLoader() {
         return Jenkins.getInstance().getPluginManager().uberClassLoader;
     }
@@ -77,7 +119,7 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
             cl = Thread.currentThread().getContextClassLoader();
         }
         PrintStream logger = listener.getLogger();
-        GroovyShell shell = new GroovyShell(cl);
+        Binding binding = new Binding();
 
         if(parameters != null) {
             for (Parameter param : parameters) {
@@ -85,19 +127,49 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
                 if (DEFAULT_VARIABLES.contains(paramName)) {
                     logger.println(Messages.skipParamter(paramName));
                 } else {
-                    shell.setVariable(paramName, param.getValue());
+                    binding.setVariable(paramName, param.getValue());
                 }
             }
         }
         
         // set default variables
-        shell.setVariable("out", logger);
-        shell.setVariable("listener", listener);
-        if(build != null) shell.setVariable("build", build);
-        if(launcher != null) shell.setVariable("launcher", launcher);
+        binding.setVariable("out", logger);
+        binding.setVariable("listener", listener);
+        if(build != null) binding.setVariable("build", build);
+        if(launcher != null) binding.setVariable("launcher", launcher);
         
+        final CompilerConfiguration config = new CompilerConfiguration();
+        String configKey = "default";
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        // also the lock shared by the watchdog and the cleanup, so that no interrupt can happen after the cleanup
+        final AtomicBoolean finished = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = null;
+        if (timeout > 0) {
+            // loops and method calls check for the interrupt flag set by the watchdog
+            config.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+            configKey = "threadInterrupt";
+            final Thread executing = Thread.currentThread();
+            watchdog = WATCHDOG.schedule(new Runnable() {
+                public void run() {
+                    synchronized (finished) {
+                        if (!finished.get()) {
+                            timedOut.set(true);
+                            executing.interrupt();
+                        }
+                    }
+                }
+            }, timeout, TimeUnit.SECONDS);
+        }
+
         try {
-            Object output = shell.evaluate(script);
+            Class<? extends groovy.lang.Script> scriptClass = COMPILED_SCRIPTS.getScriptClass(script, cl, configKey, config);
+            Object output = InvokerHelper.createScript(scriptClass, binding).run();
+            if (maxResultLength > 0 && output != null && !(output instanceof Boolean)) {
+                final String result = output.toString();
+                if (result.length() > maxResultLength) {
+                    output = result.substring(0, maxResultLength) + "... [" + Messages.resultTruncated(result.length() - maxResultLength) + "]";
+                }
+            }
             if (output != null) {
                 logger.println(Messages.resultPrefix() + " " + output);
                 return output;
@@ -105,11 +177,29 @@ public class GroovyScript implements DelegatingCallable<Object, RuntimeException
                 return "";
             }
         } catch (Throwable t) {
+            if (timedOut.get()) {
+                logger.println(Messages.scriptTimedOut(timeout));
+                if (!failWithException) {
+                    return Boolean.FALSE;
+                }
+                t = new TimeoutException(Messages.scriptTimedOut(timeout)).initCause(t);
+            }
             if (failWithException) {
                 throw new ScriptlerExecutionException(t);
             }
             t.printStackTrace(logger);
             return Boolean.FALSE;
+        } finally {
+            if (watchdog != null) {
+                synchronized (finished) {
+                    finished.set(true);
+                }
+                watchdog.cancel(false);
+                if (timedOut.get()) {
+                    // don't leave the interrupt flag on the (pooled) thread
+                    Thread.interrupted();
+                }
+            }
         }
     }
 
@@ -0,0 +1,24 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads with a recognizable name, so that Scriptler's background threads can be identified in a
+ * thread dump.
+ */
+public class NamedDaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public NamedDaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + " [#" + count.incrementAndGet() + "]");
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import hudson.security.ACL;
+import hudson.util.ExceptionCatchingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+/**
+ * Dispatches a task to a number of nodes concurrently. The number of nodes handled at the same time is bounded by
+ * <code>NodeFanOut.parallelism</code> (system property), all further nodes are queued until a thread becomes available.
+ */
+public class NodeFanOut {
+
+    /** max number of nodes a script gets executed on at the same time */
+    public static final int PARALLELISM = Integer.getInteger(NodeFanOut.class.getName() + ".parallelism", 20);
+
+    /** max time in milliseconds to wait for the result of a single node, <code>0</code> waits forever */
+    public static final long NODE_TIMEOUT = Long.getLong(NodeFanOut.class.getName() + ".nodeTimeout", TimeUnit.MINUTES.toMillis(30));
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ExceptionCatchingThreadFactory(new NamedDaemonThreadFactory("Scriptler node fan-out")));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private NodeFanOut() {
+    }
+
+    /**
+     * The work to be done on a single node.
+     */
+    public interface NodeTask<V> {
+        /**
+         * @param index the position of the node in the list of nodes submitted
+         * @param node  the name of the node
+         */
+        V call(int index, String node) throws Exception;
+    }
+
+    /**
+     * Submits the task for each of the given nodes.
+     *
+     * @param auth  the identity the task runs as on the threads of the fan-out, usually the user who started the execution
+     * @param nodes the nodes to run the task for
+     * @param task  the task to run
+     * @return the futures of the task - in the same order as the given nodes
+     */
+    public static <V> List<Future<V>> submit(final Authentication auth, String[] nodes, final NodeTask<V> task) {
+        List<Future<V>> futures = new ArrayList<Future<V>>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            final int index = i;
+            final String node = nodes[i];
+            futures.add(EXECUTOR.submit(new java.util.concurrent.Callable<V>() {
+                public V call() throws Exception {
+                    final SecurityContext old = ACL.impersonate(auth);
+                    try {
+                        return task.call(index, node);
+                    } finally {
+                        SecurityContextHolder.setContext(old);
+                    }
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Cancels all the given futures, running tasks get interrupted.
+     */
+    public static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -4,17 +4,27 @@ import hudson.Launcher;
 import hudson.model.Computer;
 import hudson.model.Hudson;
 import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.security.ACL;
 import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
 import jenkins.model.Jenkins.MasterComputer;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONSerializer;
-import org.apache.commons.io.IOUtils;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.scriptler.Messages;
 import org.jenkinsci.plugins.scriptler.ScriptlerManagment;
+import org.jenkinsci.plugins.scriptler.ScritplerPluginImpl;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.config.Script;
 import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.metrics.ScriptlerMetrics;
+import org.jenkinsci.plugins.scriptler.run.ScriptRun;
+import org.jenkinsci.plugins.scriptler.run.ScriptRunService;
 import org.jenkinsci.plugins.scriptler.share.EnvObjects;
 import org.jenkinsci.plugins.scriptler.share.ScriptInfo;
 import org.jenkinsci.plugins.scriptler.share.ScriptInfo.Author;
@@ -23,17 +33,28 @@ import javax.servlet.ServletException;
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /** @author Dominik Bartholdi (imod) */
 public class ScriptHelper {
 
     private final static Logger LOGGER = Logger.getLogger(ScriptHelper.class.getName());
 
-    private static final Pattern SCRIPT_META_PATTERN = Pattern.compile(".*BEGIN META(.+?)END META.*", Pattern.DOTALL);
+    /**
+     * only this many characters from the start of a script are read and searched for the meta info, by convention it is
+     * at the top of the script
+     */
+    public static final int MAX_META_SCAN_LENGTH = Integer.getInteger(ScriptHelper.class.getName() + ".maxMetaScanLength", 16 * 1024);
+    /** max number of characters of the result returned by a script executed via the console */
+    public static final int MAX_CONSOLE_RESULT_LENGTH = Integer.getInteger(ScriptHelper.class.getName() + ".maxConsoleResultLength", 64 * 1024);
+
+    private static final ScriptSourceCache SOURCES = new ScriptSourceCache(Long.getLong(ScriptHelper.class.getName() + ".sourceCacheBytes", 16 * 1024 * 1024));
+
     private static final Map<String, Class<?>> JSON_CLASS_MAPPING = new HashMap<String, Class<?>>();
 
     static {
@@ -45,20 +66,24 @@ public class ScriptHelper {
      * Loads the script information.
      *
      * @param id      the id of the script
-     * @param withSrc should the script sources be loaded too?
-     * @return the script - <code>null</code> if the id is not set or the script with the given id can not be resolved
+     * @param withSrc should the script sources be loaded too? They are served from a cache as long as the file did not change.
+     * @return a copy of the script, to be used for a single execution - <code>null</code> if the id is not set or the script with the given id can not be resolved
      */
     public static Script getScript(String id, boolean withSrc) {
         if (StringUtils.isBlank(id)) {
             return null;
         }
+        ScritplerPluginImpl.awaitInitialized();
         Script s = ScriptlerConfiguration.getConfiguration().getScriptById(id);
-        if (withSrc && s != null) {
+        if (s == null) {
+            return null;
+        }
+        // the configured instance is shared by all readers, so never hand it out for changes
+        s = s.copy();
+        if (withSrc) {
             try {
                 File scriptSrc = new File(ScriptlerManagment.getScriptDirectory(), s.getScriptPath());
-                Reader reader = new FileReader(scriptSrc);
-                String src = IOUtils.toString(reader);
-                s.setScript(src);
+                s.setScript(SOURCES.getSource(scriptSrc));
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, Messages.scriptSourceNotFound(id), e);
             }
@@ -66,20 +91,48 @@ public class ScriptHelper {
         return s;
     }
 
+    /**
+     * Drops the cached source of the script file, must be called after the file got written or deleted.
+     *
+     * @param scriptFile the file in the scripts directory
+     */
+    public static void invalidateSource(File scriptFile) {
+        SOURCES.invalidate(scriptFile);
+    }
+
+    /**
+     * Drops all cached sources, e.g. after the whole scripts directory got replaced.
+     */
+    public static void invalidateSources() {
+        SOURCES.clear();
+    }
+
+    /**
+     * Runs the script on all the given nodes concurrently (see {@link NodeFanOut}) and waits until all are done. A node
+     * not responding does not block the other nodes, it only delays the returned output until its timeout elapsed.
+     *
+     * @param slaves the nodes to run the script on
+     * @param script the script to be executed
+     * @return the output of all nodes - in the same order as the given nodes
+     * @throws IOException
+     * @throws ServletException
+     * @see org.jenkinsci.plugins.scriptler.run.ScriptRunService to run the script in the background
+     */
     public static String runScript(String[] slaves, Script script) throws IOException, ServletException {
-        StringBuilder output = new StringBuilder();
-        for (String slave : slaves) {
-            LOGGER.log(Level.FINE, "here is the node -> " + slave);
-            output.append("___________________________________________\n");
-            output.append("[" + slave + "]:\n");
-            output.append(ScriptHelper.runScript(slave, script));
+        ScriptRun run = new ScriptRun(null, script, slaves, File.createTempFile("run", ".log", ScriptRunService.getRunsDirectory()));
+        try {
+            run.run();
+            if (Thread.interrupted()) {
+                throw new ServletException(new InterruptedException());
+            }
+            return run.getOutput();
+        } finally {
+            run.dispose();
         }
-        output.append("___________________________________________\n");
-        return output.toString();
     }
 
     /**
-     * Runs the execution on a given slave.
+     * Runs the execution on a given slave. The execution gets cancelled if it does not finish within {@link NodeFanOut#NODE_TIMEOUT}.
      *
      * @param node   where to run the script.
      * @param script the script to be executed
@@ -89,23 +142,107 @@ public class ScriptHelper {
      */
     public static String runScript(String node, Script script) throws IOException, ServletException {
         ByteArrayOutputStream sos = new ByteArrayOutputStream();
-        StreamTaskListener listener = new StreamTaskListener(sos);
+        runScript(node, script, sos);
+        return sos.toString();
+    }
+
+    /**
+     * Runs the execution on a given slave and writes the output to the given stream while the script is executing. The
+     * execution gets cancelled if it does not finish within {@link NodeFanOut#NODE_TIMEOUT}.
+     *
+     * @param node   where to run the script.
+     * @param script the script to be executed
+     * @param out    receives the output of the script
+     * @return the result of the script - <code>Boolean.FALSE</code> if the execution failed
+     * @throws IOException
+     * @throws ServletException
+     */
+    public static Object runScript(String node, Script script, OutputStream out) throws IOException, ServletException {
+        return runScript(node, script, out, script.getTimeout());
+    }
+
+    /**
+     * Runs the execution on a given slave and writes the output to the given stream while the script is executing.
+     *
+     * @param node    where to run the script.
+     * @param script  the script to be executed
+     * @param out     receives the output of the script
+     * @param timeout max number of seconds the script may take, <code>0</code> limits the execution to {@link NodeFanOut#NODE_TIMEOUT} only
+     * @return the result of the script - <code>Boolean.FALSE</code> if the execution failed
+     * @throws IOException
+     * @throws ServletException
+     */
+    public static Object runScript(String node, Script script, OutputStream out, long timeout) throws IOException, ServletException {
+        final CountingOutputStream countingOut = new CountingOutputStream(out);
+        StreamTaskListener listener = new StreamTaskListener(countingOut);
         Launcher launcher = new EnvObjects(listener).getLauncher(node);
         Callable<Object, RuntimeException> callableScript = ExecutableScript.withScriptInfo(script)
-                .withLauncher(launcher).withParams(script.getParameters()).withListener(listener).build();
-        if (node != null && script.script != null) {
-            Computer comp = Hudson.getInstance().getComputer(node);
-            if (comp == null && "(master)".equals(node)) {
-                MasterComputer.localChannel.call(callableScript);
-            } else if (comp != null && comp.getChannel() != null) {
-                try {
-                    comp.getChannel().call(callableScript);
-                } catch (InterruptedException e) {
-                    throw new ServletException(e);
+                .withLauncher(launcher).withParams(script.getParameters()).withListener(listener)
+                .withMaxResultLength(MAX_CONSOLE_RESULT_LENGTH).withTimeout(timeout).build();
+        Object result = Boolean.FALSE;
+        final long start = ScriptlerMetrics.start();
+        try {
+            if (node != null && script.script != null) {
+                Computer comp = Hudson.getInstance().getComputer(node);
+                VirtualChannel channel = null;
+                if (comp == null && "(master)".equals(node)) {
+                    channel = MasterComputer.localChannel;
+                    // the local channel calls on a thread of its own, which must run the script as the current user
+                    callableScript = new Impersonating<Object>(callableScript, Jenkins.getAuthentication());
+                } else if (comp != null) {
+                    channel = comp.getChannel();
+                }
+                if (channel != null) {
+                    Future<Object> future = channel.callAsync(callableScript);
+                    // a script timeout replaces the node timeout, plus some time for the script to report its interruption
+                    final long nodeTimeout = timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout + 30) : NodeFanOut.NODE_TIMEOUT;
+                    try {
+                        if (nodeTimeout > 0) {
+                            result = future.get(nodeTimeout, TimeUnit.MILLISECONDS);
+                        } else {
+                            result = future.get();
+                        }
+                    } catch (TimeoutException e) {
+                        future.cancel(true);
+                        listener.getLogger().println(Messages.node_timeout(node, nodeTimeout));
+                    } catch (InterruptedException e) {
+                        future.cancel(true);
+                        throw new ServletException(e);
+                    } catch (ExecutionException e) {
+                        e.getCause().printStackTrace(listener.getLogger());
+                    }
                 }
             }
+            listener.getLogger().flush();
+            return result;
+        } finally {
+            ScriptlerMetrics.get().record(ScriptlerMetrics.EntryPoint.CONSOLE, script.getId(), node, ScriptlerMetrics.since(start),
+                    Boolean.FALSE.equals(result), countingOut.getByteCount());
+        }
+    }
+
+    /**
+     * Runs a callable of the local channel as the given user.
+     */
+    private static final class Impersonating<V> implements Callable<V, RuntimeException> {
+        private static final long serialVersionUID = 1L;
+
+        private final Callable<V, RuntimeException> callable;
+        private final transient Authentication auth;
+
+        Impersonating(Callable<V, RuntimeException> callable, Authentication auth) {
+            this.callable = callable;
+            this.auth = auth;
+        }
+
+        public V call() {
+            final SecurityContext old = ACL.impersonate(auth);
+            try {
+                return callable.call();
+            } finally {
+                SecurityContextHolder.setContext(old);
+            }
         }
-        return sos.toString();
     }
 
         /**
@@ -117,12 +254,33 @@ public class ScriptHelper {
          */
 
     public static ScriptInfo extractScriptInfo(String fullScriptBody) {
-        final Matcher matcher = SCRIPT_META_PATTERN.matcher(fullScriptBody);
-        if (matcher.find()) {
-            final String group = matcher.group(1);
+        final String group = ScriptMetaScanner.findMeta(fullScriptBody, MAX_META_SCAN_LENGTH);
+        if (group != null) {
             final JSONObject json = (JSONObject) JSONSerializer.toJSON(group.trim());
             return (ScriptInfo) JSONObject.toBean(json, ScriptInfo.class, JSON_CLASS_MAPPING);
         }
         return null;
     }
+
+    /**
+     * Reads only the first {@link #MAX_META_SCAN_LENGTH} characters of the script file to extract its meta info.
+     *
+     * @param script the UTF-8 encoded script file
+     * @return <code>null</code> if no meta info found
+     */
+    public static ScriptInfo extractScriptInfo(File script) throws IOException {
+        // a char takes at least one byte, so the file length bounds the number of chars
+        final char[] prefix = new char[(int) Math.min(MAX_META_SCAN_LENGTH, script.length())];
+        final Reader reader = new InputStreamReader(new FileInputStream(script), "UTF-8");
+        try {
+            int length = 0;
+            int read;
+            while (length < prefix.length && (read = reader.read(prefix, length, prefix.length - length)) > 0) {
+                length += read;
+            }
+            return extractScriptInfo(new String(prefix, 0, length));
+        } finally {
+            reader.close();
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+/**
+ * Finds the meta information block (<code>BEGIN META ... END META</code>) of a script in linear time. Gives the same
+ * result as the former <code>.*BEGIN META(.+?)END META.*</code> (DOTALL) pattern, which backtracked across the whole
+ * script: the content after the last <code>BEGIN META</code> followed by an <code>END META</code>, up to the first
+ * <code>END META</code> after it.
+ */
+public final class ScriptMetaScanner {
+
+    static final String BEGIN = "BEGIN META";
+    static final String END = "END META";
+
+    private ScriptMetaScanner() {
+    }
+
+    /**
+     * @param body     the script
+     * @param maxChars only the first <code>maxChars</code> of the script are searched
+     * @return the content of the meta block (not trimmed) - <code>null</code> if there is none
+     */
+    public static String findMeta(String body, int maxChars) {
+        final String prefix = body.length() > maxChars ? body.substring(0, maxChars) : body;
+        final int lastEnd = prefix.lastIndexOf(END);
+        if (lastEnd < 0) {
+            return null;
+        }
+        // the content must not be empty, so the begin marker has to end at least one char before the end marker
+        final int begin = prefix.lastIndexOf(BEGIN, lastEnd - BEGIN.length() - 1);
+        if (begin < 0) {
+            return null;
+        }
+        final int contentStart = begin + BEGIN.length();
+        final int end = prefix.indexOf(END, contentStart + 1);
+        return prefix.substring(contentStart, end);
+    }
+}
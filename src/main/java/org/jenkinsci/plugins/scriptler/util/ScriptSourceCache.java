@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps the sources of recently executed scripts, so that they don't have to be read from disk on each execution. An
+ * entry is only used as long as the modification time and the size of the file did not change. As the modification
+ * time might only have a granularity of seconds, the writers of the scripts must {@link #invalidate(File)} the entries
+ * of the files they change. The total size of the cached sources is limited, the least recently used entries get
+ * evicted once the budget is exceeded.
+ */
+public class ScriptSourceCache {
+
+    private final long maxBytes;
+    private final Map<File, Entry> entries = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+    // guarded by entries
+    private long bytes;
+
+    /**
+     * @param maxBytes the maximal size of all cached sources (a char is counted as two bytes)
+     */
+    public ScriptSourceCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the content of the given file, the file is only read if it changed since it got cached.
+     *
+     * @param file the script file, read with the default encoding (as scripts are written with it)
+     * @return the source
+     * @throws IOException if the file does not exist or can not be read
+     */
+    public String getSource(File file) throws IOException {
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        synchronized (entries) {
+            final Entry cached = entries.get(file);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                return cached.source;
+            }
+        }
+        // read outside of the lock, other scripts must not wait for the disk. If the file changes while it is read, the
+        // new content is cached with the old timestamp - and read again on the next access.
+        final String source = FileUtils.readFileToString(file);
+        final Entry entry = new Entry(lastModified, length, source);
+        synchronized (entries) {
+            final Entry replaced = entries.remove(file);
+            if (replaced != null) {
+                bytes -= replaced.weight();
+            }
+            if (entry.weight() <= maxBytes) {
+                entries.put(file, entry);
+                bytes += entry.weight();
+                evict();
+            }
+        }
+        return source;
+    }
+
+    private void evict() {
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the size of all cached sources
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Drops the cached source of the given file, to be called whenever the file gets written or deleted.
+     */
+    public void invalidate(File file) {
+        synchronized (entries) {
+            final Entry removed = entries.remove(file);
+            if (removed != null) {
+                bytes -= removed.weight();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long length;
+        private final String source;
+
+        Entry(long lastModified, long length, String source) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.source = source;
+        }
+
+        long weight() {
+            return 2L * source.length();
+        }
+    }
+}
@@ -3,12 +3,14 @@ package org.jenkinsci.plugins.scriptler.util;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.model.TaskListener;
 import hudson.remoting.Callable;
 import hudson.remoting.DelegatingCallable;
 import hudson.remoting.VirtualChannel;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.scriptler.Messages;
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.jenkinsci.plugins.scriptler.share.EnvObjects;
 
@@ -19,6 +21,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import static java.util.Arrays.asList;
@@ -48,10 +55,16 @@ import static java.util.Arrays.asList;
  */
 public class ShellScript implements DelegatingCallable<Object, RuntimeException>, Serializable {
     private static final long serialVersionUID = 1L;
+
+    /** kills the scripts whose timeout is up, on the node running them */
+    private static final ScheduledExecutorService KILLER = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory(
+            "Scriptler shell script timeout"));
+
     private final String command;
     private final TaskListener taskListener;
     private final FilePath workingDir;
     private final Parameter[] params;
+    private long timeout;
     /**
      * Contains parameters that have to be passed to the interpreters in order for them to recognize that the script
      * itself is passed via command line args.
@@ -71,6 +84,15 @@ public class ShellScript implements DelegatingCallable<Object, RuntimeException>
         this.taskListener = taskListener;
     }
 
+    /**
+     * Limits the time the script may take, the process (including its children) gets killed once the time is up.
+     *
+     * @param timeout max number of seconds, <code>0</code> does not limit the execution time
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
     public ClassLoader getClassLoader() {
         return Jenkins.getInstance().getPluginManager().uberClassLoader;
     }
@@ -84,9 +106,24 @@ public class ShellScript implements DelegatingCallable<Object, RuntimeException>
 
             List<String> commands = new ArrayList<String>(getInterpreter(command, launcher.getChannel()));
             commands.add(command);
-            int resultCode = launcher.launch()
+            Proc proc = launcher.launch()
                     .cmds(commands).envs(Parameter.toMap(params))
-                    .stderr(logger).stdout(logger).pwd(currentFolder).join();
+                    .stderr(logger).stdout(logger).pwd(currentFolder).start();
+            int resultCode;
+            if (timeout > 0) {
+                final AtomicBoolean killed = new AtomicBoolean();
+                final ScheduledFuture<?> kill = KILLER.schedule(new Killer(proc, killed), timeout, TimeUnit.SECONDS);
+                try {
+                    resultCode = proc.join();
+                } finally {
+                    kill.cancel(false);
+                }
+                if (killed.get()) {
+                    logger.println(Messages.scriptTimedOut(timeout));
+                }
+            } else {
+                resultCode = proc.join();
+            }
             return resultCode == 0;
         } catch (IOException e) {
             return logAndRethrowIllegalState(e);
@@ -95,6 +132,33 @@ public class ShellScript implements DelegatingCallable<Object, RuntimeException>
         }
     }
 
+    /**
+     * Kills the process if it is still running and records that it did, so that only a killed script is reported as
+     * timed out.
+     */
+    private final class Killer implements Runnable {
+        private final Proc proc;
+        private final AtomicBoolean killed;
+
+        Killer(Proc proc, AtomicBoolean killed) {
+            this.proc = proc;
+            this.killed = killed;
+        }
+
+        public void run() {
+            try {
+                if (proc.isAlive()) {
+                    killed.set(true);
+                    proc.kill();
+                }
+            } catch (IOException e) {
+                taskListener.getLogger().println("[WARN] " + e.getMessage());
+            } catch (InterruptedException e) {
+                taskListener.getLogger().println("[WARN] " + e.getMessage());
+            }
+        }
+    }
+
     private Object logAndRethrowIllegalState(Exception e) {
         taskListener.getLogger().println("Error " + e.getMessage());
         throw new IllegalStateException("Error occurred during execution of shell script: ", e);
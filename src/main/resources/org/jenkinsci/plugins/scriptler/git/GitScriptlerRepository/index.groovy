@@ -36,20 +36,16 @@ l.layout {
             } 
         }
         
-//        h1 "Log"
-//        
-//        my.log.each { log -> 
-//            pre {
-//                b {
-//                    raw "commit ${log.name}" 
-//                } 
-//                br {raw "Author: ${log.author}"}
-//                br {raw "Commiter: ${log.commiter}"}
-//                br {raw "Date: ${log.committime}"}
-//                p {
-//                    raw "${log.msg}"
-//                }
-//            }
-//        }
+        h1 "Log"
+
+        // loaded page by page
+        div(id: "scriptler-log", "data-url": "${app.rootUrl}scriptler.git/log") {}
+        a(id: "scriptler-log-more", href: "#", style: "display:none") {
+            raw _("more")
+        }
+        script(type: "text/javascript", src: "${app.rootUrl}plugin/scriptler/lib/scriptler.js") {}
+        script(type: "text/javascript") {
+            raw "scriptler_loadLog('scriptler-log', 'scriptler-log-more');"
+        }
     }
 }
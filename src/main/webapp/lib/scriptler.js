@@ -42,3 +42,91 @@ function scriptler_showParams(referenceTag, scriptId){
 }
 
 
+/**
+ * Appends a page of the git log to the element with the given id, its 'data-url' attribute holds the url of the log.
+ * The 'more' link loads the next page. If the element has a 'data-script' attribute, each revision gets links to its
+ * changes of the script and to restore the script to it (a POST with the crumb).
+ */
+function scriptler_loadLog(logId, moreId, start){
+	var log = document.getElementById(logId);
+	var more = document.getElementById(moreId);
+	var url = log.getAttribute('data-url');
+	var script = log.getAttribute('data-script');
+	if(start){
+		url += (url.indexOf('?') < 0 ? '?' : '&') + 'start=' + start;
+	}
+	more.style.display = 'none';
+	new Ajax.Request(url, {
+		method: 'get',
+		onSuccess: function(rsp) {
+			var page = rsp.responseText.evalJSON();
+			for(var i = 0; i < page.entries.length; i++) {
+				var entry = page.entries[i];
+				var pre = document.createElement('pre');
+				var commit = document.createElement('b');
+				commit.appendChild(document.createTextNode('commit ' + entry.name));
+				pre.appendChild(commit);
+				pre.appendChild(document.createTextNode('\nAuthor: ' + entry.author
+						+ '\nCommiter: ' + entry.commiter
+						+ '\nDate: ' + new Date(entry.committime)
+						+ '\n\n' + entry.msg));
+				if(script){
+					pre.appendChild(document.createTextNode('\n'));
+					pre.appendChild(scriptler_link('scriptDiff?id=' + encodeURIComponent(script) + '&to=' + entry.name, 'changes', null));
+					pre.appendChild(document.createTextNode(' '));
+					pre.appendChild(scriptler_postLink('restoreScript', {id: script, rev: entry.name}, 'restore',
+							'Sure you want to restore [' + script + '] to ' + entry.name + '?'));
+				}
+				log.appendChild(pre);
+			}
+			if(page.next){
+				more.onclick = function() {
+					scriptler_loadLog(logId, moreId, page.next);
+					return false;
+				};
+				more.style.display = '';
+			}
+		}
+	});
+}
+
+function scriptler_link(href, text, confirmation){
+	var a = document.createElement('a');
+	a.href = href;
+	a.appendChild(document.createTextNode(text));
+	if(confirmation){
+		a.onclick = function() {
+			return confirm(confirmation);
+		};
+	}
+	return a;
+}
+
+/**
+ * A link submitting the parameters as a POST form, including the crumb if CSRF protection is enabled.
+ */
+function scriptler_postLink(action, params, text, confirmation){
+	var a = scriptler_link('#', text, null);
+	a.onclick = function() {
+		if(confirmation && !confirm(confirmation)){
+			return false;
+		}
+		var form = document.createElement('form');
+		form.method = 'post';
+		form.action = action;
+		for(var name in params){
+			var input = document.createElement('input');
+			input.type = 'hidden';
+			input.name = name;
+			input.value = params[name];
+			form.appendChild(input);
+		}
+		if(typeof crumb != 'undefined'){
+			crumb.appendToForm(form);
+		}
+		document.body.appendChild(form);
+		form.submit();
+		return false;
+	};
+	return a;
+}
@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.scriptler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptDirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void changesAreAppliedOnceSettled() throws Exception {
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        ScriptDirectoryWatcher watcher = new ScriptDirectoryWatcher(tmp.getRoot(), 10);
+        assertFalse(watcher.poll(cfg));
+
+        File script = new File(tmp.getRoot(), "hello.groovy");
+        FileUtils.writeStringToFile(script, "println 'hello'");
+        // seen, but might still be written to
+        assertFalse(watcher.poll(cfg));
+        assertNull(cfg.getScriptById("hello.groovy"));
+
+        assertTrue(watcher.poll(cfg));
+        assertTrue(cfg.getScriptById("hello.groovy").available);
+        assertTrue(watcher.getPending().isEmpty());
+        assertFalse(watcher.poll(cfg));
+
+        script.delete();
+        assertFalse(watcher.poll(cfg));
+        assertTrue(watcher.poll(cfg));
+        assertFalse(cfg.getScriptById("hello.groovy").available);
+    }
+
+    @Test
+    public void fileStillBeingWrittenIsNotApplied() throws Exception {
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        ScriptDirectoryWatcher watcher = new ScriptDirectoryWatcher(tmp.getRoot(), 10);
+
+        File script = new File(tmp.getRoot(), "hello.groovy");
+        FileUtils.writeStringToFile(script, "println");
+        assertFalse(watcher.poll(cfg));
+        FileUtils.writeStringToFile(script, "println 'hello'");
+        assertFalse(watcher.poll(cfg));
+        assertNull(cfg.getScriptById("hello.groovy"));
+        assertTrue(watcher.poll(cfg));
+    }
+
+    @Test
+    public void manyChangesFallBackToAFullSync() throws Exception {
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        ScriptDirectoryWatcher watcher = new ScriptDirectoryWatcher(tmp.getRoot(), 2);
+        for (int i = 0; i < 5; i++) {
+            FileUtils.writeStringToFile(new File(tmp.getRoot(), i + ".groovy"), "println " + i);
+        }
+        assertFalse(watcher.poll(cfg));
+        assertTrue(watcher.poll(cfg));
+        assertEquals(5, cfg.getScripts().size());
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.scriptler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SyncUtilTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void newFilesAreAddedAndMissingOnesMarkedUnavailable() throws Exception {
+        File scripts = tmp.newFolder("scripts");
+        for (int i = 0; i < 20; i++) {
+            FileUtils.writeStringToFile(new File(scripts, i + ".groovy"), "println " + i);
+        }
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        SyncUtil.syncDirWithCfg(scripts, cfg);
+        assertEquals(20, cfg.getScripts().size());
+
+        // the metadata of known scripts belongs to the configuration, a changed file does not replace it
+        cfg.addOrReplace(new Script("0.groovy", "zero", "", "groovy", false, null, false));
+        FileUtils.writeStringToFile(new File(scripts, "0.groovy"), "println 'changed'");
+        new File(scripts, "1.groovy").delete();
+        SyncUtil.syncDirWithCfg(scripts, cfg);
+
+        assertEquals(20, cfg.getScripts().size());
+        assertEquals("zero", cfg.getScriptById("0.groovy").name);
+        assertTrue(cfg.getScriptById("0.groovy").available);
+        assertFalse(cfg.getScriptById("1.groovy").available);
+    }
+
+    @Test
+    public void scriptsNotEndingWithGroovyStayAvailable() throws Exception {
+        File scripts = tmp.newFolder("scripts");
+        FileUtils.writeStringToFile(new File(scripts, "run.sh"), "#!/bin/sh");
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        cfg.addOrReplace(new Script("run.sh", "run", "", "shebang", false, null, false));
+
+        SyncUtil.syncDirWithCfg(scripts, cfg);
+        assertTrue(cfg.getScriptById("run.sh").available);
+        assertEquals(1, cfg.getScripts().size());
+    }
+
+    @Test
+    public void onlyScriptsArePickedUpFromTheChangedFiles() throws Exception {
+        File scripts = tmp.newFolder("scripts");
+        FileUtils.writeStringToFile(new File(scripts, "new.groovy"), "println 'new'");
+        FileUtils.writeStringToFile(new File(scripts, "README.md"), "# scripts");
+        FileUtils.writeStringToFile(new File(scripts, ".gitignore"), "*.bak");
+        FileUtils.writeStringToFile(new File(scripts, "run.sh"), "#!/bin/sh");
+        ScriptlerConfiguration cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+        cfg.addOrReplace(new Script("run.sh", "run", "", "shebang", false, null, false));
+        cfg.addOrReplace(new Script("removed.groovy", "removed", "", "groovy", false, null, false));
+
+        SyncUtil.syncFilesWithCfg(scripts, cfg, Arrays.asList("new.groovy", "README.md", ".gitignore", "run.sh", "removed.groovy"));
+
+        assertEquals(3, cfg.getScripts().size());
+        assertTrue(cfg.getScriptById("new.groovy").available);
+        assertTrue(cfg.getScriptById("run.sh").available);
+        assertFalse(cfg.getScriptById("removed.groovy").available);
+        assertNull(cfg.getScriptById("README.md"));
+        assertNull(cfg.getScriptById(".gitignore"));
+    }
+}
@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.XmlFile;
+
+import java.io.File;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigurationPersisterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final AtomicInteger writes = new AtomicInteger();
+    private XmlFile file;
+    private ScriptlerConfiguration cfg;
+
+    @Before
+    public void setUp() {
+        file = ScriptlerConfiguration.getXmlFile(new File(tmp.getRoot(), "scriptler.xml"));
+        cfg = new ScriptlerConfiguration(new TreeSet<Script>(new ByIdSorter()));
+    }
+
+    @Test
+    public void changesWithinTheWindowAreWrittenOnce() throws Exception {
+        ConfigurationPersister persister = persister(60 * 1000);
+        for (int i = 0; i < 10; i++) {
+            cfg.addOrReplace(new Script(i + ".groovy", "script " + i, "", "groovy", false, null, false));
+            persister.markDirty(cfg, file);
+        }
+        persister.flush();
+
+        assertEquals(1, writes.get());
+        ScriptlerConfiguration loaded = ScriptlerConfiguration.load(file);
+        assertEquals(10, loaded.getScripts().size());
+        assertNotNull(loaded.getScriptById("9.groovy"));
+    }
+
+    @Test
+    public void unchangedContentIsNotWritten() throws Exception {
+        ConfigurationPersister persister = persister(60 * 1000);
+        cfg.addOrReplace(new Script("a.groovy", "a", "", "groovy", false, null, false));
+        persister.markDirty(cfg, file);
+        persister.flush();
+        persister.markDirty(cfg, file);
+        persister.flush();
+        assertEquals(1, writes.get());
+
+        // also after a restart, the content on disk is compared
+        persister = persister(60 * 1000);
+        persister.markDirty(cfg, file);
+        persister.flush();
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void pendingChangesGetWrittenAfterTheWindow() throws Exception {
+        ConfigurationPersister persister = persister(10);
+        persister.markDirty(cfg, file);
+        for (int i = 0; i < 500 && writes.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, writes.get());
+        assertNotNull(ScriptlerConfiguration.load(file));
+    }
+
+    @Test
+    public void snapshotGetsWrittenOnceTheScriptsStoppedChanging() throws Exception {
+        ConfigurationPersister persister = persister(10, 10);
+        cfg.addOrReplace(new Script("a.groovy", "a", "", "groovy", false, null, false));
+        persister.markDirty(cfg, file);
+        final File snapshot = new File(new File(tmp.getRoot(), ScriptStore.DIRECTORY), "scripts.bin");
+        for (int i = 0; i < 500 && !snapshot.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(snapshot.exists());
+        assertFalse(cfg.isSnapshotStale());
+        assertFalse(ScriptlerConfiguration.load(file).isLoadedLazily());
+    }
+
+    private ConfigurationPersister persister(long window) {
+        return persister(window, ConfigurationPersister.SNAPSHOT_DELAY);
+    }
+
+    private ConfigurationPersister persister(long window, long snapshotDelay) {
+        return new ConfigurationPersister(ScriptlerConfiguration.XSTREAM, window, snapshotDelay) {
+            @Override
+            protected void onWritten(ScriptlerConfiguration cfg, XmlFile file) {
+                writes.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplacingFileWriterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void committedContentReplacesTheFile() throws Exception {
+        final File file = new File(tmp.getRoot(), "scriptler.xml");
+        FileUtils.writeStringToFile(file, "old", "UTF-8");
+
+        final ReplacingFileWriter w = new ReplacingFileWriter(file, "UTF-8");
+        try {
+            w.write("new");
+            w.commit();
+        } finally {
+            w.abort();
+        }
+        assertEquals("new", FileUtils.readFileToString(file, "UTF-8"));
+        // no temporary files are left behind
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void abortedContentIsDropped() throws Exception {
+        final File file = new File(tmp.getRoot(), "scriptler.xml");
+        FileUtils.writeStringToFile(file, "old", "UTF-8");
+
+        final ReplacingFileWriter w = new ReplacingFileWriter(file, "UTF-8");
+        w.write("new");
+        w.abort();
+        assertEquals("old", FileUtils.readFileToString(file, "UTF-8"));
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void backupOfAnInterruptedCommitIsRestored() throws Exception {
+        final File file = new File(tmp.getRoot(), "scriptler.xml");
+        FileUtils.writeStringToFile(ReplacingFileWriter.getBackup(file), "old", "UTF-8");
+
+        ReplacingFileWriter.restoreBackup(file);
+        assertEquals("old", FileUtils.readFileToString(file, "UTF-8"));
+        assertFalse(ReplacingFileWriter.getBackup(file).exists());
+    }
+}
@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class ScriptSetTest {
+
+    @Test
+    public void writesPublishNewSnapshots() {
+        ScriptSet set = new ScriptSet();
+        set.addOrReplace(new Script("b.groovy", "b", "", "groovy", true, null, false));
+        set.addOrReplace(new Script("a.groovy", "a", "", "groovy", false, null, false));
+        final ScriptSet.Snapshot before = set.getSnapshot();
+        assertEquals(Arrays.asList("b.groovy"), ids(set.getUserScripts()));
+
+        set.addOrReplace(new Script("a.groovy", "a2", "", "groovy", true, null, false));
+        assertEquals("a2", set.getScriptById("a.groovy").getName());
+        assertEquals(Arrays.asList("a.groovy", "b.groovy"), ids(set.getScripts()));
+        assertEquals(Arrays.asList("a.groovy", "b.groovy"), ids(set.getUserScripts()));
+
+        set.removeScript("b.groovy");
+        assertNull(set.getScriptById("b.groovy"));
+        assertEquals(Arrays.asList("a.groovy"), ids(set.getUserScripts()));
+
+        // readers holding an older snapshot still see a consistent state
+        assertEquals("a", before.getScriptById("a.groovy").getName());
+        assertEquals(Arrays.asList("b.groovy"), ids(before.getUserScripts()));
+        assertEquals(before.getVersion() + 2, set.getSnapshot().getVersion());
+    }
+
+    @Test
+    public void iteratingWhileWritingIsSafe() throws Exception {
+        final ScriptSet set = new ScriptSet();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2000; i++) {
+                    set.addOrReplace(new Script(i + ".groovy", "s" + i, "", "groovy", i % 2 == 0, null, false));
+                    if (i % 3 == 0) {
+                        set.removeScript((i / 2) + ".groovy");
+                    }
+                }
+            }
+        };
+        writer.start();
+        while (writer.isAlive()) {
+            final ScriptSet.Snapshot snapshot = set.getSnapshot();
+            for (Script script : snapshot.getScripts()) {
+                assertSame(script, snapshot.getScriptById(script.getId()));
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void indexIsRebuiltForNewScripts() {
+        ScriptSet set = new ScriptSet();
+        final Script script = new Script("c.groovy", "c", "", "groovy", true, null, false);
+        set.setScripts(new TreeSet<Script>(Arrays.asList(script)));
+        assertSame(script, set.getScriptById("c.groovy"));
+        assertEquals(1, set.getUserScripts().size());
+    }
+
+    @Test
+    public void derivedSnapshotsStaySorted() {
+        final ScriptSet set = new ScriptSet();
+        final Map<String, Boolean> expected = new TreeMap<String, Boolean>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final String id = random.nextInt(200) + ".groovy";
+            if (random.nextInt(4) == 0) {
+                set.removeScript(id);
+                expected.remove(id);
+            } else {
+                final boolean userScript = random.nextBoolean();
+                set.addOrReplace(new Script(id, id, "", "groovy", userScript, null, false));
+                expected.put(id, userScript);
+            }
+        }
+        final List<String> userIds = new ArrayList<String>();
+        for (Map.Entry<String, Boolean> entry : expected.entrySet()) {
+            if (entry.getValue()) {
+                userIds.add(entry.getKey());
+            }
+        }
+        assertEquals(new ArrayList<String>(expected.keySet()), ids(set.getScripts()));
+        assertEquals(userIds, ids(set.getUserScripts()));
+        for (String id : expected.keySet()) {
+            assertEquals(id, set.getScriptById(id).getId());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreUnmodifiable() {
+        new ScriptSet().getScripts().add(new Script("d.groovy", "d", "", "groovy", true, null, false));
+    }
+
+    private static List<String> ids(Set<Script> scripts) {
+        List<String> ids = new ArrayList<String>();
+        for (Script script : scripts) {
+            ids.add(script.getId());
+        }
+        return ids;
+    }
+}
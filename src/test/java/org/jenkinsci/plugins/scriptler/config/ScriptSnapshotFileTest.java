@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptSnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file;
+    private ScriptSnapshotFile snapshot;
+
+    @Before
+    public void setUp() {
+        file = new File(tmp.getRoot(), "scripts.bin");
+        snapshot = new ScriptSnapshotFile(file);
+    }
+
+    @Test
+    public void scriptsAreReadAsWritten() throws Exception {
+        Script full = new Script("a.groovy", "a", "comment ä", "groovy", false, "catalog", "origin", "2013-07-01", true,
+                new Parameter[] { new Parameter("p", "v"), new Parameter("empty", null) }, true);
+        full.setTimeout(42);
+        Script minimal = new Script("b.sh", null, null, "shell", true, null, false);
+        snapshot.write("checksum", Arrays.asList(full, minimal));
+
+        List<Script> read = snapshot.read("checksum");
+        assertEquals(2, read.size());
+        Script a = read.get(0);
+        assertEquals("a.groovy", a.getId());
+        assertEquals("a", a.name);
+        assertEquals("comment ä", a.comment);
+        assertEquals("catalog", a.originCatalog);
+        assertEquals("origin", a.originScript);
+        assertEquals("2013-07-01", a.originDate);
+        assertEquals(false, a.available);
+        assertEquals(true, a.nonAdministerUsing);
+        assertEquals(true, a.onlyMaster);
+        assertEquals(42, a.getTimeout());
+        assertEquals(2, a.getParameters().length);
+        assertEquals("v", a.getParameters()[0].getValue());
+        assertNull(a.getParameters()[1].getValue());
+
+        Script b = read.get(1);
+        assertEquals("b.sh", b.getId());
+        assertNull(b.comment);
+        assertEquals("shell", b.interpreter);
+        assertNull(b.getParameters());
+    }
+
+    @Test
+    public void snapshotOfAnotherChecksumIsIgnored() throws Exception {
+        snapshot.write("checksum", Arrays.asList(new Script("a.groovy", "a", "", "groovy", false, null, false)));
+        assertNull(snapshot.read("other"));
+    }
+
+    @Test
+    public void truncatedSnapshotIsIgnored() throws Exception {
+        snapshot.write("checksum", Arrays.asList(new Script("a.groovy", "a", "", "groovy", false, null, false)));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        assertNull(snapshot.read("checksum"));
+    }
+
+    @Test
+    public void missingSnapshotIsIgnored() {
+        assertNull(snapshot.read("checksum"));
+    }
+}
@@ -0,0 +1,142 @@
+package org.jenkinsci.plugins.scriptler.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.XmlFile;
+
+import java.io.File;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptlerConfigurationTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private XmlFile file;
+    private File meta;
+
+    @Before
+    public void setUp() throws Exception {
+        file = ScriptlerConfiguration.getXmlFile(new File(tmp.getRoot(), "scriptler.xml"));
+        meta = new File(tmp.getRoot(), ScriptStore.DIRECTORY);
+
+        // the former layout, all scripts in scriptler.xml
+        SortedSet<Script> scripts = new TreeSet<Script>(new ByIdSorter());
+        scripts.add(new Script("a.groovy", "a", "first", "groovy", false, null, false));
+        scripts.add(new Script("b.groovy", "b", "second", "groovy", true, null, false));
+        ScriptlerConfiguration legacy = new ScriptlerConfiguration(null);
+        legacy.scriptSet = scripts;
+        legacy.setAllowRunScriptEdit(true);
+        file.write(legacy);
+    }
+
+    @Test
+    public void formerLayoutIsMigrated() throws Exception {
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+        assertEquals(2, cfg.getScripts().size());
+
+        assertTrue(new File(meta, "a.groovy.xml").exists());
+        assertTrue(new File(meta, "b.groovy.xml").exists());
+        final String xml = FileUtils.readFileToString(file.getFile());
+        assertFalse(xml, xml.contains("a.groovy"));
+
+        ScriptlerConfiguration reloaded = ScriptlerConfiguration.load(file);
+        assertTrue(reloaded.isAllowRunScriptEdit());
+        assertEquals(2, reloaded.getScripts().size());
+        assertEquals(1, reloaded.getUserScripts().size());
+    }
+
+    @Test
+    public void singleScriptsAreLoadedLazily() throws Exception {
+        ScriptlerConfiguration.load(file);
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+
+        assertEquals("first", cfg.getScriptById("a.groovy").comment);
+        assertNull(cfg.getScriptById("missing.groovy"));
+        assertTrue(cfg.isLoadedLazily());
+
+        cfg.getScripts();
+        assertFalse(cfg.isLoadedLazily());
+        assertEquals("first", cfg.getScriptById("a.groovy").comment);
+    }
+
+    @Test
+    public void onlyChangedScriptsAreWritten() throws Exception {
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+        final File b = new File(meta, "b.groovy.xml");
+        assertTrue(b.delete());
+
+        cfg.addOrReplace(new Script("a.groovy", "a", "changed", "groovy", false, null, false));
+        cfg.addOrReplace(new Script("c.groovy", "c", "third", "groovy", false, null, false));
+        assertTrue(cfg.writeScripts(file));
+        assertFalse(cfg.writeScripts(file));
+        assertFalse(b.exists());
+
+        cfg.removeScript("c.groovy");
+        cfg.writeScripts(file);
+        assertFalse(new File(meta, "c.groovy.xml").exists());
+
+        ScriptlerConfiguration reloaded = ScriptlerConfiguration.load(file);
+        assertEquals("changed", reloaded.getScriptById("a.groovy").comment);
+        assertNull(reloaded.getScriptById("c.groovy"));
+    }
+
+    @Test
+    public void scriptsAreLoadedFromAnUpToDateSnapshot() throws Exception {
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+        assertTrue(cfg.isSnapshotStale());
+        assertTrue(cfg.writeSnapshot(file));
+        assertFalse(cfg.isSnapshotStale());
+
+        ScriptlerConfiguration reloaded = ScriptlerConfiguration.load(file);
+        assertFalse(reloaded.isLoadedLazily());
+        assertFalse(reloaded.isSnapshotStale());
+        assertEquals(2, reloaded.getScripts().size());
+        assertEquals(1, reloaded.getUserScripts().size());
+        assertEquals("first", reloaded.getScriptById("a.groovy").comment);
+    }
+
+    @Test
+    public void outdatedSnapshotIsIgnored() throws Exception {
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+        cfg.writeSnapshot(file);
+
+        cfg.addOrReplace(new Script("a.groovy", "a", "changed", "groovy", false, null, false));
+        // not written while the change is not in the store
+        assertFalse(cfg.writeSnapshot(file));
+        cfg.writeScripts(file);
+        assertTrue(cfg.isSnapshotStale());
+
+        ScriptlerConfiguration reloaded = ScriptlerConfiguration.load(file);
+        assertTrue(reloaded.isLoadedLazily());
+        assertEquals("changed", reloaded.getScriptById("a.groovy").comment);
+    }
+
+    @Test
+    public void snapshotIsDroppedBeforeTheStoreChanges() throws Exception {
+        ScriptlerConfiguration cfg = ScriptlerConfiguration.load(file);
+        cfg.writeSnapshot(file);
+        final File a = new File(meta, "a.groovy.xml");
+        final long lastModified = a.lastModified();
+
+        // same size and modification time, the checksum of the store does not change
+        cfg.addOrReplace(new Script("a.groovy", "a", "FIRST", "groovy", false, null, false));
+        cfg.writeScripts(file);
+        a.setLastModified(lastModified);
+        assertFalse(new File(meta, "scripts.bin").exists());
+
+        ScriptlerConfiguration reloaded = ScriptlerConfiguration.load(file);
+        assertEquals("FIRST", reloaded.getScriptById("a.groovy").comment);
+    }
+}
@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BlobCacheTest {
+
+    @Test
+    public void blobsAreCachedById() {
+        BlobCache cache = new BlobCache(1024);
+        cache.put("a1", "println 'a'");
+        assertEquals("println 'a'", cache.get("a1"));
+        assertNull(cache.get("b2"));
+        assertEquals(22, cache.getBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedBlobsAreEvicted() {
+        BlobCache cache = new BlobCache(40);
+        cache.put("a", "0123456789");
+        cache.put("b", "0123456789");
+        cache.get("a");
+        cache.put("c", "0123456789");
+
+        assertEquals(2, cache.size());
+        assertEquals(40, cache.getBytes());
+        assertNull(cache.get("b"));
+        assertEquals("0123456789", cache.get("a"));
+    }
+
+    @Test
+    public void blobsLargerThanTheBudgetAreNotCached() {
+        BlobCache cache = new BlobCache(10);
+        cache.put("a", "0123456789");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+}
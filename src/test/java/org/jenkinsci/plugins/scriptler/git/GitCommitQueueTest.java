@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.jenkinsci.plugins.scriptler.git.GitCommitQueue.Change;
+import org.junit.Test;
+
+public class GitCommitQueueTest {
+
+    private final List<String> commits = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void changesWithinTheWindowAreCommittedOnce() throws Exception {
+        GitCommitQueue queue = queue(60 * 1000, 1000);
+        for (int i = 0; i < 300; i++) {
+            queue.add(i + ".groovy", "alice");
+        }
+        assertEquals(0, commits.size());
+        queue.flush();
+
+        assertEquals(1, commits.size());
+        assertTrue(commits.get(0), commits.get(0).startsWith("Scriptler/alice: 300 files: update 300 scripts via WebUI"));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void pendingChangesGetCommittedAfterTheWindow() throws Exception {
+        GitCommitQueue queue = queue(10, 1000);
+        queue.add("a.groovy", "alice");
+        for (int i = 0; i < 500 && commits.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("Scriptler/alice: 1 files: update script via WebUI: a.groovy"), commits);
+    }
+
+    @Test
+    public void fullQueueIsCommittedByTheCaller() throws Exception {
+        GitCommitQueue queue = queue(60 * 1000, 2);
+        queue.add("a.groovy", "alice");
+        queue.add("b.groovy", "alice");
+        queue.remove("c.groovy", "bob");
+
+        assertEquals(1, commits.size());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void messageListsEachFileWithItsAuthor() {
+        List<Change> changes = Arrays.asList(new Change("a.groovy", "alice", false), new Change("b.groovy", "bob", true), new Change("a.groovy",
+                "bob", false));
+        assertEquals("Scriptler", GitCommitQueue.getAuthor(changes));
+        assertEquals("update 2 scripts via WebUI\n\nremove b.groovy (bob)\nupdate a.groovy (bob)", GitCommitQueue.getMessage(changes));
+    }
+
+    private GitCommitQueue queue(long window, int capacity) {
+        return new GitCommitQueue(window, capacity) {
+            @Override
+            protected void commit(Set<String> paths, String author, String message) {
+                commits.add(author + ": " + paths.size() + " files: " + message);
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.jenkinsci.plugins.scriptler.git.GitGarbageCollector.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitGarbageCollectorTest {
+
+    private static final long EXPIRE = TimeUnit.DAYS.toMillis(14);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Git git;
+
+    @Before
+    public void init() throws Exception {
+        git = Git.init().setDirectory(tmp.getRoot()).call();
+    }
+
+    @After
+    public void close() {
+        git.getRepository().close();
+    }
+
+    @Test
+    public void looseObjectsArePackedOnceTheThresholdIsReached() throws Exception {
+        commit(5);
+        Repository repo = git.getRepository();
+
+        Result result = new GitGarbageCollector(100, 50, EXPIRE).collect(repo, NullProgressMonitor.INSTANCE, false);
+        assertFalse(result.isCollected());
+        assertNull(result.after);
+        // each commit: blob, tree and commit
+        assertEquals(15, result.before.looseObjects);
+
+        result = new GitGarbageCollector(15, 50, EXPIRE).collect(repo, NullProgressMonitor.INSTANCE, false);
+        assertTrue(result.isCollected());
+        assertEquals(0, result.after.looseObjects);
+        assertEquals(1, result.after.packFiles);
+        assertTrue(result.after.bytes > 0);
+        assertTrue(result.after.bytes < result.before.bytes);
+
+        // the history is still readable from the pack
+        assertEquals(5, count(git.log().call()));
+    }
+
+    @Test
+    public void redundantPacksAreReplaced() throws Exception {
+        commit(2);
+        GitGarbageCollector gc = new GitGarbageCollector(100, 50, EXPIRE);
+        gc.collect(git.getRepository(), NullProgressMonitor.INSTANCE, true);
+        commit(1);
+
+        Result result = gc.collect(git.getRepository(), NullProgressMonitor.INSTANCE, true);
+        assertEquals(1, result.before.packFiles);
+        assertEquals(3, result.before.looseObjects);
+        assertEquals(1, result.after.packFiles);
+        assertEquals(0, result.after.looseObjects);
+        assertEquals(3, count(git.log().call()));
+    }
+
+    @Test
+    public void unreachableObjectsArePrunedOnceExpired() throws Exception {
+        commit(1);
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
+        final ObjectId unreachable;
+        try {
+            unreachable = inserter.insert(Constants.OBJ_BLOB, "unreachable".getBytes("UTF-8"));
+            inserter.flush();
+        } finally {
+            inserter.release();
+        }
+
+        Result result = new GitGarbageCollector(100, 50, EXPIRE).collect(git.getRepository(), NullProgressMonitor.INSTANCE, true);
+        assertEquals(1, result.after.looseObjects);
+        assertTrue(git.getRepository().getObjectDatabase().has(unreachable));
+
+        result = new GitGarbageCollector(100, 50, -1000).collect(git.getRepository(), NullProgressMonitor.INSTANCE, true);
+        assertEquals(0, result.after.looseObjects);
+    }
+
+    @Test
+    public void manyPackFilesAreRepacked() {
+        GitGarbageCollector gc = new GitGarbageCollector(100, 3, EXPIRE);
+        assertFalse(gc.isNeeded(new GitGarbageCollector.Statistics(0, 2, 0)));
+        assertTrue(gc.isNeeded(new GitGarbageCollector.Statistics(0, 3, 0)));
+    }
+
+    private void commit(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            write("script.groovy", "println " + System.nanoTime());
+            git.add().addFilepattern("script.groovy").call();
+            git.commit().setMessage("change " + i).setAuthor("test", "test@example.org").call();
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        final OutputStream out = new FileOutputStream(new File(tmp.getRoot(), name));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int count(Iterable<?> iterable) {
+        int count = 0;
+        for (Object o : iterable) {
+            count++;
+        }
+        return count;
+    }
+}
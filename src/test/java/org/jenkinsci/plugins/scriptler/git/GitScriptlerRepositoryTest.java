@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitScriptlerRepositoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void changedPathsOfAPushAreTheRootFilesDifferingFromTheIndex() throws Exception {
+        final File workspace = tmp.newFolder("scripts");
+        final Git git = Git.init().setDirectory(workspace).call();
+        write(workspace, "changed.groovy", "println 1");
+        write(workspace, "removed.groovy", "println 2");
+        write(workspace, "same.groovy", "println 3");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("initial").call();
+
+        // another clone pushes its changes, the workspace and its index still have the old state
+        final File cloneDir = tmp.newFolder("clone");
+        final Git clone = Git.cloneRepository().setURI(workspace.toURI().toString()).setDirectory(cloneDir).call();
+        write(cloneDir, "changed.groovy", "println 'changed'");
+        write(cloneDir, "added.groovy", "println 'added'");
+        write(cloneDir, "README.md", "# scripts");
+        write(cloneDir, "lib/helper.groovy", "println 'helper'");
+        new File(cloneDir, "removed.groovy").delete();
+        clone.add().addFilepattern(".").call();
+        clone.rm().addFilepattern("removed.groovy").call();
+        clone.commit().setMessage("push").call();
+        git.fetch().setRemote(cloneDir.toURI().toString()).setRefSpecs(new RefSpec("+refs/heads/master:refs/heads/master")).call();
+
+        assertEquals(new HashSet<String>(Arrays.asList("README.md", "added.groovy", "changed.groovy", "removed.groovy")),
+                GitScriptlerRepository.getChangedPaths(git.getRepository()));
+
+        clone.getRepository().close();
+        git.getRepository().close();
+    }
+
+    @Test
+    public void changedPathsAreUnknownWithoutHead() throws Exception {
+        final Git git = Git.init().setDirectory(tmp.newFolder("empty")).call();
+        assertNull(GitScriptlerRepository.getChangedPaths(git.getRepository()));
+        git.getRepository().close();
+    }
+
+    @Test
+    public void fileCreatedAndDeletedBeforeTheCommitIsSkipped() throws Exception {
+        final File workspace = tmp.newFolder("commit");
+        final Git git = Git.init().setDirectory(workspace).call();
+        write(workspace, "kept.groovy", "println 1");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("initial").call();
+
+        assertFalse(GitScriptlerRepository.commitFiles(git, workspace, Collections.singleton("ghost.groovy"), "alice", "ghost"));
+        assertEquals(1, count(git.log().call()));
+
+        write(workspace, "kept.groovy", "println 2");
+        assertTrue(GitScriptlerRepository.commitFiles(git, workspace, new HashSet<String>(Arrays.asList("ghost.groovy", "kept.groovy")),
+                "alice", "update"));
+        assertEquals(2, count(git.log().call()));
+
+        new File(workspace, "kept.groovy").delete();
+        assertTrue(GitScriptlerRepository.commitFiles(git, workspace, Collections.singleton("kept.groovy"), "alice", "remove"));
+        assertNull(git.getRepository().readDirCache().getEntry("kept.groovy"));
+        git.getRepository().close();
+    }
+
+    private static int count(Iterable<?> iterable) {
+        int count = 0;
+        for (Object o : iterable) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void write(File dir, String name, String content) throws Exception {
+        FileUtils.writeStringToFile(new File(dir, name), content, "UTF-8");
+    }
+}
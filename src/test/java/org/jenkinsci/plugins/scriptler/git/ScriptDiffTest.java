@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.scriptler.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.jenkinsci.plugins.scriptler.git.ScriptDiff.Row;
+import org.jenkinsci.plugins.scriptler.git.ScriptDiff.Type;
+import org.junit.Test;
+
+public class ScriptDiffTest {
+
+    @Test
+    public void changedLinesAreSideBySide() {
+        List<Row> rows = ScriptDiff.compute("a\nb\nc\n", "a\nB\nc\nd\n");
+        assertEquals(4, rows.size());
+        assertRow(rows.get(0), Type.EQUAL, 1, "a", 1, "a");
+        assertRow(rows.get(1), Type.REPLACE, 2, "b", 2, "B");
+        assertRow(rows.get(2), Type.EQUAL, 3, "c", 3, "c");
+        assertRow(rows.get(3), Type.INSERT, 0, null, 4, "d");
+    }
+
+    @Test
+    public void removedLinesHaveNoNewLine() {
+        List<Row> rows = ScriptDiff.compute("a\nb\n", "a\n");
+        assertEquals(2, rows.size());
+        assertRow(rows.get(1), Type.DELETE, 2, "b", 0, null);
+        assertNull(rows.get(1).newText);
+    }
+
+    @Test
+    public void newScriptIsAllInserts() {
+        List<Row> rows = ScriptDiff.compute("", "a\nb\n");
+        assertEquals(2, rows.size());
+        assertRow(rows.get(0), Type.INSERT, 0, null, 1, "a");
+        assertRow(rows.get(1), Type.INSERT, 0, null, 2, "b");
+    }
+
+    private static void assertRow(Row row, Type type, int oldLine, String oldText, int newLine, String newText) {
+        assertEquals(type, row.type);
+        assertEquals(oldLine, row.oldLine);
+        assertEquals(oldText, row.oldText);
+        assertEquals(newLine, row.newLine);
+        assertEquals(newText, row.newText);
+    }
+}
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.scriptler.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.jenkinsci.plugins.scriptler.config.Parameter;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.config.ScriptlerConfiguration;
+import org.jenkinsci.plugins.scriptler.util.ByIdSorter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExecutionHistoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void lastRecordsOfScriptComeFromTheIndex() throws Exception {
+        ExecutionHistory history = new ExecutionHistory(tmp.getRoot(), 1);
+        for (int i = 1; i <= 5; i++) {
+            history.append(record(i * 1000, "a.groovy", "output " + i));
+            history.append(record(i * 1000 + 1, "b.groovy", "other"));
+        }
+
+        List<ExecutionRecord> records = history.getRecords("a.groovy", 2);
+        assertEquals(2, records.size());
+        assertEquals(5000, records.get(0).getTime());
+        assertEquals(4000, records.get(1).getTime());
+        assertEquals("output 5", records.get(0).getNodes().get(0).getOutput());
+        assertEquals("value", records.get(0).getParameters()[0].getValue());
+    }
+
+    @Test
+    public void recordsWithinTimeRange() throws Exception {
+        ExecutionHistory history = new ExecutionHistory(tmp.getRoot(), 1);
+        for (int i = 1; i <= 5; i++) {
+            history.append(record(i * 60 * 60 * 1000L, "a.groovy", "output " + i));
+        }
+
+        List<ExecutionRecord> records = history.getRecords(2 * 60 * 60 * 1000L, 3 * 60 * 60 * 1000L, 10);
+        assertEquals(2, records.size());
+        assertEquals(3 * 60 * 60 * 1000L, records.get(0).getTime());
+        assertEquals(2 * 60 * 60 * 1000L, records.get(1).getTime());
+    }
+
+    @Test
+    public void compactionAppliesCountAndAgeRetention() throws Exception {
+        ExecutionHistory history = new ExecutionHistory(tmp.getRoot(), 1);
+        for (int i = 1; i <= 5; i++) {
+            history.append(record(i * 1000, "a.groovy", "output " + i));
+            history.append(record(i * 1000 + 1, "b.groovy", "other"));
+        }
+
+        history.compact(3, 3500);
+
+        List<ExecutionRecord> records = history.getRecords("a.groovy", 10);
+        assertEquals(2, records.size());
+        assertEquals(5000, records.get(0).getTime());
+        assertEquals(4000, records.get(1).getTime());
+        assertEquals(2, history.getRecords("b.groovy", 10).size());
+
+        // the rebuilt index survives a restart
+        assertEquals(2, new ExecutionHistory(tmp.getRoot(), 1).getRecords("a.groovy", 10).size());
+    }
+
+    @Test
+    public void activeSegmentGetsSealedAndCompacted() throws Exception {
+        ExecutionHistory history = new ExecutionHistory(tmp.getRoot(), 1024 * 1024);
+        for (int i = 1; i <= 5; i++) {
+            history.append(record(i * 1000, "a.groovy", "output " + i));
+        }
+
+        history.compact(0, 3500);
+
+        List<ExecutionRecord> records = history.getRecords("a.groovy", 10);
+        assertEquals(2, records.size());
+        assertEquals(5000, records.get(0).getTime());
+
+        // appends go to a new segment, which is compacted later on
+        history.append(record(6000, "a.groovy", "output 6"));
+        history.compact(0, 5500);
+        records = history.getRecords("a.groovy", 10);
+        assertEquals(1, records.size());
+        assertEquals(6000, records.get(0).getTime());
+    }
+
+    @Test
+    public void usersOnlySeeTheirOwnRunsOfScriptsTheyMayRun() throws Exception {
+        ExecutionHistory history = new ExecutionHistory(tmp.getRoot(), 1);
+        history.append(record(1000, "public.groovy", "alice", "output"));
+        history.append(record(2000, "public.groovy", "bob", "output"));
+        history.append(record(3000, "admin.groovy", "alice", "secret"));
+
+        SortedSet<Script> scripts = new TreeSet<Script>(new ByIdSorter());
+        scripts.add(new Script("public.groovy", "public", "", "groovy", true, null, false));
+        scripts.add(new Script("admin.groovy", "admin", "", "groovy", false, null, false));
+        ExecutionHistory.RecordFilter filter = new ExecutionHistory.UserRecordFilter("alice", new ScriptlerConfiguration(scripts));
+
+        List<ExecutionRecord> records = history.getRecords(0, Long.MAX_VALUE - 60000, 10, filter);
+        assertEquals(1, records.size());
+        assertEquals(1000, records.get(0).getTime());
+
+        assertEquals(1, history.getRecords("public.groovy", 10, filter).size());
+        assertEquals(0, history.getRecords("admin.groovy", 10, filter).size());
+    }
+
+    private static ExecutionRecord record(long time, String scriptId, String output) throws Exception {
+        return record(time, scriptId, "admin", output);
+    }
+
+    private static ExecutionRecord record(long time, String scriptId, String user, String output) throws Exception {
+        ExecutionRecord.NodeResult node = new ExecutionRecord.NodeResult("(master)", 10, ExecutionRecord.Status.SUCCESS, CompressedOutput.compress(output.getBytes()));
+        return new ExecutionRecord(time, scriptId, "run" + time, "hash", user, new Parameter[] { new Parameter("param", "value") },
+                Collections.singletonList(node));
+    }
+}
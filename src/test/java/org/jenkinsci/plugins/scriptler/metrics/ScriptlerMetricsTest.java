@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.scriptler.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class ScriptlerMetricsTest {
+
+    @Test
+    public void bucketBoundsContainTheirValues() {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 100, 1000, 123456, 1L << 39 }) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(value + " below its bucket", bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithin(500, histogram.getPercentile(0.5));
+        assertWithin(950, histogram.getPercentile(0.95));
+        assertWithin(990, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void countsFailuresPerSeries() {
+        ScriptlerMetrics metrics = new ScriptlerMetrics();
+        metrics.record(ScriptlerMetrics.EntryPoint.CONSOLE, "a.groovy", "(master)", 10, false, 100);
+        metrics.record(ScriptlerMetrics.EntryPoint.CONSOLE, "a.groovy", "(master)", 20, true, 50);
+        metrics.record(ScriptlerMetrics.EntryPoint.BUILDER, "a.groovy", "(master)", 30, false, 0);
+
+        ExecutionStats stats = metrics.getStats(ScriptlerMetrics.EntryPoint.CONSOLE, "a.groovy", "(master)");
+        assertEquals(2, stats.getExecutions());
+        assertEquals(1, stats.getFailures());
+        assertEquals(150, stats.getOutputBytes());
+        assertEquals(1, metrics.getStats(ScriptlerMetrics.EntryPoint.BUILDER, "a.groovy", "(master)").getExecutions());
+
+        StringWriter prometheus = new StringWriter();
+        metrics.writePrometheus(new PrintWriter(prometheus));
+        assertTrue(prometheus.toString().contains("scriptler_executions_total{entry_point=\"console\",script=\"a.groovy\",node=\"(master)\"} 2"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.scriptler.run;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import hudson.security.ACL;
+import hudson.security.GlobalMatrixAuthorizationStrategy;
+import jenkins.model.Jenkins;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.acegisecurity.providers.UsernamePasswordAuthenticationToken;
+import org.jenkinsci.plugins.scriptler.Messages;
+import org.jenkinsci.plugins.scriptler.config.Script;
+import org.jenkinsci.plugins.scriptler.util.ScriptHelper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class ScriptRunTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void scriptRunsAsTheSubmittingUser() throws Exception {
+        final Script script = new Script("whoami.groovy", "whoami", "", "groovy", false, null, false);
+        script.setScript("jenkins.model.Jenkins.getAuthentication().getName()");
+
+        final SecurityContext old = ACL.impersonate(new UsernamePasswordAuthenticationToken("alice", "alice", new GrantedAuthority[0]));
+        final String output;
+        try {
+            output = ScriptHelper.runScript(new String[] { "(master)" }, script);
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+        assertTrue(output, output.contains(Messages.resultPrefix() + " alice"));
+    }
+
+    @Test
+    public void backgroundRunKeepsTheSubmittingUser() throws Exception {
+        final Script script = new Script("whoami.groovy", "whoami", "", "groovy", false, null, false);
+        script.setScript("jenkins.model.Jenkins.getAuthentication().getName()");
+
+        final SecurityContext old = ACL.impersonate(new UsernamePasswordAuthenticationToken("bob", "bob", new GrantedAuthority[0]));
+        final ScriptRun run;
+        try {
+            run = ScriptRunService.get().submit(script, new String[] { "(master)" }, 0);
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+        while (!run.isDone()) {
+            Thread.sleep(50);
+        }
+        final String output = run.getOutput();
+        assertTrue(output, output.contains(Messages.resultPrefix() + " bob"));
+    }
+
+    @Test
+    public void onlyTheSubmitterAndAdministratorsSeeARun() throws Exception {
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        final GlobalMatrixAuthorizationStrategy strategy = new GlobalMatrixAuthorizationStrategy();
+        strategy.add(Jenkins.READ, "alice");
+        strategy.add(Jenkins.READ, "bob");
+        strategy.add(Jenkins.ADMINISTER, "admin");
+        j.jenkins.setAuthorizationStrategy(strategy);
+
+        final Script script = new Script("hello.groovy", "hello", "", "groovy", false, null, false);
+        script.setScript("'hello'");
+        SecurityContext old = ACL.impersonate(user("alice"));
+        final String id;
+        try {
+            id = ScriptRunService.get().submit(script, new String[] { "(master)" }, 0).getId();
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+
+        assertNotNull(getRunAs("alice", id));
+        assertNull(getRunAs("bob", id));
+        assertNotNull(getRunAs("admin", id));
+    }
+
+    private static ScriptRun getRunAs(String user, String id) {
+        final SecurityContext old = ACL.impersonate(user(user));
+        try {
+            return ScriptRunService.get().getRun(id);
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+    }
+
+    private static Authentication user(String name) {
+        return new UsernamePasswordAuthenticationToken(name, name, new GrantedAuthority[0]);
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BoundedOutputSinkTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void smallOutputStaysInMemory() throws Exception {
+        BoundedOutputSink sink = new BoundedOutputSink(tmp.getRoot(), 100, 0);
+        sink.write("hello".getBytes());
+        assertFalse(sink.isSpilled());
+        assertEquals("hello", toString(sink));
+        sink.close();
+    }
+
+    @Test
+    public void bigOutputIsSpilledToDisk() throws Exception {
+        BoundedOutputSink sink = new BoundedOutputSink(tmp.getRoot(), 4, 0);
+        sink.write("hello".getBytes());
+        sink.write(" world".getBytes());
+        assertTrue(sink.isSpilled());
+        assertEquals(1, tmp.getRoot().listFiles().length);
+        assertEquals("hello world", toString(sink));
+        sink.close();
+        assertEquals("spill file not removed", 0, tmp.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void outputExceedingTheCapIsDropped() throws Exception {
+        BoundedOutputSink sink = new BoundedOutputSink(tmp.getRoot(), 100, 8);
+        sink.write("hello world".getBytes());
+        sink.write("!".getBytes());
+        assertEquals(8, sink.getSize());
+        assertEquals(4, sink.getDropped());
+        assertEquals("hello wo\n... [output truncated, 4 bytes dropped]\n", toString(sink));
+        sink.close();
+    }
+
+    private static String toString(BoundedOutputSink sink) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sink.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.junit.Test;
+
+public class CompiledScriptCacheTest {
+
+    private final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+    @Test
+    public void sameSourceIsOnlyCompiledOnce() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        Class<?> first = cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration());
+        Class<?> second = cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration());
+        assertSame(first, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void differentConfigurationIsCompiledSeparately() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        Class<?> first = cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration());
+        Class<?> second = cache.getScriptClass("return 1", loader, "other", new CompilerConfiguration());
+        assertNotSame(first, second);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        CompiledScriptCache cache = new CompiledScriptCache(2);
+        Class<?> one = cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration());
+        cache.getScriptClass("return 2", loader, "default", new CompilerConfiguration());
+        // touch the first one, so the second becomes the eldest
+        assertSame(one, cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration()));
+        cache.getScriptClass("return 3", loader, "default", new CompilerConfiguration());
+        assertEquals(2, cache.size());
+        assertSame(one, cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration()));
+    }
+
+    @Test
+    public void differentClassLoaderIsCompiledSeparately() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        Class<?> first = cache.getScriptClass("return 1", loader, "default", new CompilerConfiguration());
+        Class<?> second = cache.getScriptClass("return 1", new URLClassLoader(new URL[0], loader), "default", new CompilerConfiguration());
+        assertNotSame(first, second);
+        assertEquals(2, cache.size());
+    }
+}
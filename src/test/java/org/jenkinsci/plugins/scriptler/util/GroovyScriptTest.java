@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.scriptler.util;
 import hudson.util.StreamTaskListener;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.concurrent.TimeoutException;
 
 import org.jenkinsci.plugins.scriptler.config.Parameter;
 import org.junit.Test;
@@ -53,4 +55,38 @@ public class GroovyScriptTest {
         assertEquals("HelloWorld", sos.toString());
         assertEquals("", result);
     }
+
+    @Test
+    public void bindingIsNotSharedBetweenExecutions() {
+        final String script = "if (binding.variables.containsKey('counter')) { return 'leaked' }\ncounter = 1\nreturn 'fresh'";
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream sos = new ByteArrayOutputStream();
+            GroovyScript gs = new GroovyScript(script, new Parameter[0], true, new StreamTaskListener(sos)) {
+                @Override
+                public ClassLoader getClassLoader() {
+                    return Thread.currentThread().getContextClassLoader();
+                }
+            };
+            assertEquals("fresh", gs.call());
+        }
+    }
+
+    @Test
+    public void endlessScriptGetsInterruptedOnTimeout() {
+        ByteArrayOutputStream sos = new ByteArrayOutputStream();
+        GroovyScript gs = new GroovyScript("while (true) { }", new Parameter[0], true, new StreamTaskListener(sos)) {
+            @Override
+            public ClassLoader getClassLoader() {
+                return Thread.currentThread().getContextClassLoader();
+            }
+        };
+        gs.setTimeout(1);
+        try {
+            gs.call();
+            fail("the script should have been interrupted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(!Thread.currentThread().isInterrupted());
+    }
 }
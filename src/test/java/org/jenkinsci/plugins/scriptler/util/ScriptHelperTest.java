@@ -26,4 +26,11 @@ public class ScriptHelperTest {
         assertEquals("Dude mac", info.getAuthors().get(0).getName());
         assertEquals("param1", info.getParameters().get(0));
     }
+
+    @Test
+    public void metaInfoIsReadFromTheHeadOfTheFile() throws Exception {
+        final ScriptInfo info = ScriptHelper.extractScriptInfo(new File("src/test/resources/parsing_test.groovy"));
+        assertNotNull("ScriptInfo is null", info);
+        assertEquals("print hello", info.getName());
+    }
 }
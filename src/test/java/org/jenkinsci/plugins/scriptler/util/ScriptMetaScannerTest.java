@@ -0,0 +1,53 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ScriptMetaScannerTest {
+
+    /** the pattern used before, the scanner has to find the same */
+    private static final Pattern SCRIPT_META_PATTERN = Pattern.compile(".*BEGIN META(.+?)END META.*", Pattern.DOTALL);
+
+    @Test
+    public void sameResultAsThePattern() {
+        String[] bodies = { "", "println 'no meta'", "/*** BEGIN META {\"name\":\"a\"} END META**/\nprintln 'a'", "BEGIN METAEND META", "BEGIN META END META",
+                "BEGIN META x END META y END META", "BEGIN META a END META BEGIN META b END META", "BEGIN META a BEGIN META b END META",
+                "BEGIN META a END META BEGIN META", "END META BEGIN META a", "BEGIN META\n{\n\"name\" : \"multi\nline\"\n}\nEND META\n",
+                "BEGIN META x END METABEGIN META y END META" };
+        for (String body : bodies) {
+            assertEquals(body, regex(body), ScriptMetaScanner.findMeta(body, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void onlyThePrefixIsSearched() {
+        final String body = "println 'a'\n/* BEGIN META {} END META */";
+        assertNull(ScriptMetaScanner.findMeta(body, 20));
+        assertEquals(" {} ", ScriptMetaScanner.findMeta(body, body.length()));
+    }
+
+    @Test
+    public void pathologicalInputIsScannedInLinearTime() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append("// BEGIN META without an end, line ").append(i).append('\n');
+        }
+        final String body = sb.toString();
+        final long start = System.nanoTime();
+        assertNull(ScriptMetaScanner.findMeta(body, Integer.MAX_VALUE));
+        assertNull(ScriptHelper.extractScriptInfo(body));
+        // the pattern needs minutes for this
+        assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+    }
+
+    private static String regex(String body) {
+        final Matcher matcher = SCRIPT_META_PATTERN.matcher(body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.scriptler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptSourceCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void unchangedFileIsServedFromTheCache() throws Exception {
+        ScriptSourceCache cache = new ScriptSourceCache(1024);
+        File file = script("a.groovy", "println 'a'");
+        String first = cache.getSource(file);
+        assertSame(first, cache.getSource(file));
+        assertEquals(22, cache.getBytes());
+    }
+
+    @Test
+    public void changedFileIsReadAgain() throws Exception {
+        ScriptSourceCache cache = new ScriptSourceCache(1024);
+        File file = script("a.groovy", "println 'a'");
+        cache.getSource(file);
+
+        // same size, only the modification time tells the difference
+        FileUtils.writeStringToFile(file, "println 'b'");
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals("println 'b'", cache.getSource(file));
+
+        FileUtils.writeStringToFile(file, "println 'longer'");
+        assertEquals("println 'longer'", cache.getSource(file));
+        assertEquals(1, cache.size());
+        assertEquals(32, cache.getBytes());
+    }
+
+    @Test
+    public void invalidatedFileIsReadAgain() throws Exception {
+        ScriptSourceCache cache = new ScriptSourceCache(1024);
+        File file = script("a.groovy", "println 'a'");
+        final long lastModified = file.lastModified();
+        cache.getSource(file);
+
+        // same size and modification time, e.g. saved again within the same second
+        FileUtils.writeStringToFile(file, "println 'b'");
+        file.setLastModified(lastModified);
+        assertEquals("println 'a'", cache.getSource(file));
+
+        cache.invalidate(file);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals("println 'b'", cache.getSource(file));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedWhenOverBudget() throws Exception {
+        ScriptSourceCache cache = new ScriptSourceCache(50);
+        File a = script("a.groovy", "println 'a'");
+        File b = script("b.groovy", "println 'b'");
+        File c = script("c.groovy", "println 'c'");
+        String sourceA = cache.getSource(a);
+        cache.getSource(b);
+        // touch a, so b becomes the eldest
+        cache.getSource(a);
+        cache.getSource(c);
+
+        assertEquals(2, cache.size());
+        assertEquals(44, cache.getBytes());
+        assertSame(sourceA, cache.getSource(a));
+    }
+
+    @Test
+    public void sourcesLargerThanTheBudgetAreNotCached() throws Exception {
+        ScriptSourceCache cache = new ScriptSourceCache(10);
+        assertEquals("println 'a'", cache.getSource(script("a.groovy", "println 'a'")));
+        assertEquals(0, cache.size());
+    }
+
+    private File script(String name, String source) throws Exception {
+        File file = new File(tmp.getRoot(), name);
+        FileUtils.writeStringToFile(file, source);
+        return file;
+    }
+}